@@ -1,8 +1,9 @@
 package com.github.rmannibucau.camel.loader;
 
+import com.github.rmannibucau.loader.spi.AbstractStreamingLoader;
 import com.github.rmannibucau.loader.spi.DiagramGeneratorRuntimeException;
+import com.github.rmannibucau.loader.spi.DiagramListener;
 import com.github.rmannibucau.loader.spi.FileType;
-import com.github.rmannibucau.loader.spi.Loader;
 import com.github.rmannibucau.loader.spi.graph.Diagram;
 import org.apache.camel.CamelContext;
 import org.apache.camel.RoutesBuilder;
@@ -24,19 +25,18 @@ import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 /**
  * @author Romain Manni-Bucau
  */
-public class CamelLoader implements Loader {
+public class CamelLoader extends AbstractStreamingLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger(CamelLoader.class);
 
     @Override
-    public List<Diagram> load(String input, FileType fileType) {
-        return camelContextToDiagram(input, fileType);
+    public void load(String input, FileType fileType, DiagramListener listener) {
+        camelContextToDiagram(input, fileType, listener);
     }
 
     @Override
@@ -44,8 +44,8 @@ public class CamelLoader implements Loader {
         return "camel";
     }
 
-    private List<Diagram> camelContextToDiagram(String input, FileType fileType) {
-        final List<Diagram> diagrams = new ArrayList<Diagram>();
+    private void camelContextToDiagram(String input, FileType fileType, DiagramListener listener) {
+        int diagrams = 0;
 
         final ClassLoader cl = Thread.currentThread().getContextClassLoader();
 
@@ -78,25 +78,28 @@ public class CamelLoader implements Loader {
                     LOGGER.error("can't draw routes for context '" + ctx.getName() + "'");
                 }
             }
-            diagrams.add(diagram);
+            listener.onDiagram(diagram);
+            diagrams++;
         } else { // java dsl
             final CamelContext context = new DefaultCamelContext();
 
-            final Class<?> clazz;
+            Diagram classDiagram = null;
             try {
-                clazz = cl.loadClass(input);
+                final Class<?> clazz = cl.loadClass(input);
                 context.addRoutes((RoutesBuilder) clazz.newInstance());
 
-                final Diagram diagram = new Diagram();
-                final GraphGenerator graphGenerator = new GraphGenerator(diagram);
-                diagram.setName(clazz.getSimpleName());
+                classDiagram = new Diagram();
+                final GraphGenerator graphGenerator = new GraphGenerator(classDiagram);
+                classDiagram.setName(clazz.getSimpleName());
                 try {
                     graphGenerator.drawRoutes(context.getRouteDefinitions());
                 } catch (IOException e) {
                     LOGGER.error("can't draw routes for context '" + context.getName() + "'", e);
                 }
-                diagrams.add(diagram);
             } catch (Exception e) { // try input as a package
+                classDiagram = null;
+
+                final List<Class<? extends RouteBuilder>> builders;
                 try {
                     UrlSet set = new UrlSet(cl);
                     set = set.excludeJavaHome();
@@ -106,30 +109,43 @@ public class CamelLoader implements Loader {
                     final AnnotationFinder finder = new AnnotationFinder(new FilteredArchive(new ClasspathArchive(cl, set.getUrls().toArray(new URL[set.getUrls().size()])), new PackageFilter(input)));
                     finder.link();
 
-                    final List<Class<? extends RouteBuilder>> builders = finder.findSubclasses(RouteBuilder.class);
-                    for (Class<? extends RouteBuilder> builderClazz : builders) {
-                        int modifiers = builderClazz.getModifiers();
-                        if (Modifier.isAbstract(modifiers) || builderClazz.getEnclosingClass() != null) {
-                            continue;
-                        }
+                    builders = finder.findSubclasses(RouteBuilder.class);
+                } catch (Exception e1) {
+                    throw new DiagramGeneratorRuntimeException("can't load routes from package or class", e1);
+                }
+
+                for (Class<? extends RouteBuilder> builderClazz : builders) {
+                    int modifiers = builderClazz.getModifiers();
+                    if (Modifier.isAbstract(modifiers) || builderClazz.getEnclosingClass() != null) {
+                        continue;
+                    }
 
+                    final Diagram diagram = new Diagram();
+                    try {
                         final RouteBuilder builder = builderClazz.newInstance();
-                        final Diagram diagram = new Diagram();
                         final GraphGenerator graphGenerator = new GraphGenerator(diagram);
                         diagram.setName(builderClazz.getSimpleName());
 
                         final DefaultCamelContext ctx = new DefaultCamelContext();
                         ctx.addRoutes(builder);
                         graphGenerator.drawRoutes(ctx.getRouteDefinitions());
-                        diagrams.add(diagram);
+                    } catch (Exception e1) {
+                        throw new DiagramGeneratorRuntimeException("can't load routes from package or class", e1);
                     }
-                } catch (Exception e1) {
-                    throw new DiagramGeneratorRuntimeException("can't load routes from package or class", e1);
+
+                    // handed over while the next builders are loaded
+                    listener.onDiagram(diagram);
+                    diagrams++;
                 }
             }
+
+            if (classDiagram != null) {
+                listener.onDiagram(classDiagram);
+                diagrams++;
+            }
         }
 
-        if (diagrams.size() == 0) {
+        if (diagrams == 0) {
             String msg = "can't find route inside " + input;
             if (fileType.equals(FileType.XML)) {
                 msg += " directory.";
@@ -138,7 +154,5 @@ public class CamelLoader implements Loader {
             }
             throw new DiagramGeneratorRuntimeException(msg, new Exception(msg));
         }
-
-        return diagrams;
     }
 }
@@ -9,24 +9,36 @@ import org.apache.camel.model.MulticastDefinition;
 import org.apache.camel.model.OnExceptionDefinition;
 import org.apache.camel.model.ProcessorDefinition;
 import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.model.ToDefinition;
 import org.apache.camel.view.GraphSupport;
 import org.apache.camel.view.NodeData;
 
-import javax.swing.ImageIcon;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
+ * Node ids are not the ones of camel (a counter of the visited nodes, an
+ * inserted processor renumbers all the next ones) but stable paths: the uri
+ * of an endpoint, the custom id of a processor or else the route, the labels
+ * of its parents and its own label with its occurrence index under its parent.
+ * Editing a route keeps the ids of its other nodes, the cached layouts use them.
+ *
  * @author Romain Manni-Bucau
  */
 public class GraphGenerator extends GraphSupport {
+    private static final String ENDPOINT = "endpoint:";
+
     private final Map<String, Node> nodesCache = new HashMap<String, Node>();
+    private final Map<NodeData, String> ids = new IdentityHashMap<NodeData, String>();
+    private final Map<Object, String> paths = new IdentityHashMap<Object, String>(); // definition -> path
+    private final Map<String, Integer> occurrences = new HashMap<String, Integer>();
     private Diagram diagram;
 
     protected GraphGenerator(Diagram diag) {
@@ -55,20 +67,22 @@ public class GraphGenerator extends GraphSupport {
 
     private void addRoute(RouteDefinition route, FromDefinition input) {
         NodeData from = getNodeData(input);
-        node(from);
+        node(from, ENDPOINT + input.getUriOrRef());
+        final String path = route.hasCustomIdAssigned() ? route.getId() : String.valueOf(route.getInputs().get(0).getUriOrRef());
         for (ProcessorDefinition<?> output : route.getOutputs()) {
-            from = addNode(from, output);
+            from = addNode(from, output, path);
         }
     }
 
     // took from dot generator
-    private NodeData addNode(NodeData fromData, ProcessorDefinition<?> node) {
+    private NodeData addNode(NodeData fromData, ProcessorDefinition<?> node, String parent) {
+        final String path = path(parent, node);
         if (node instanceof MulticastDefinition) {
             // no need for a multicast or interceptor node
             List<ProcessorDefinition<?>> outputs = node.getOutputs();
             boolean isPipeline = isPipeline(node);
             for (ProcessorDefinition output : outputs) {
-                NodeData out = addNode(fromData, output);
+                NodeData out = addNode(fromData, output, path);
                 // if in pipeline then we should move the from node to the next in the pipeline
                 if (isPipeline) {
                     fromData = out;
@@ -78,7 +92,7 @@ public class GraphGenerator extends GraphSupport {
         }
 
         NodeData toData = getNodeData(node);
-        node(toData);
+        node(toData, node instanceof ToDefinition ? ENDPOINT + ((ToDefinition) node).getUriOrRef() : path);
 
 		// exception handler should be on top level without incoming edges from
 
@@ -93,7 +107,7 @@ public class GraphGenerator extends GraphSupport {
         List<ProcessorDefinition<?>> outputs = toData.outputs;
         if (outputs != null) {
             for (ProcessorDefinition output : outputs) {
-                NodeData newData = addNode(toData, output);
+                NodeData newData = addNode(toData, output, path);
                 if (!isMulticastNode(node)) {
                     toData = newData;
                 }
@@ -102,22 +116,49 @@ public class GraphGenerator extends GraphSupport {
         return toData;
     }
 
+    private Node node(NodeData data, String id) {
+        if (!ids.containsKey(data)) { // endpoints are shared, the first id is kept
+            ids.put(data, id);
+        }
+        return node(data);
+    }
+
     private Node node(NodeData data) {
         completeNodeData(data);
 
-        if (!nodesCache.containsKey(data.id)) {
+        final String id = ids.get(data);
+        if (!nodesCache.containsKey(id)) {
             Node node = new Node(getText(data));
+            node.setId(id);
             if (data.image != null && !data.image.isEmpty()) {
                 String icon = "/icons" + data.image.substring(data.image.lastIndexOf('/'));
                 URL url = GraphGenerator.class.getResource(icon);
                 if (url != null) {
-                    node.setIcon(new ImageIcon(url));
+                    node.setIconKey(url.toExternalForm()); // decoded by the renderers, once per icon
                 }
             }
-            nodesCache.put(data.id, node);
+            nodesCache.put(id, node);
             diagram.addVertex(node);
         }
-        return nodesCache.get(data.id);
+        return nodesCache.get(id);
+    }
+
+    // a definition visited again (route with several inputs) keeps its path
+    private String path(String parent, ProcessorDefinition<?> definition) {
+        String path = paths.get(definition);
+        if (path == null) {
+            if (definition.hasCustomIdAssigned()) {
+                path = definition.getId();
+            } else {
+                final String label = parent + "/" + definition.getLabel();
+                final Integer occurrence = occurrences.get(label);
+                final int index = occurrence == null ? 0 : occurrence;
+                occurrences.put(label, index + 1);
+                path = label + "#" + index;
+            }
+            paths.put(definition, path);
+        }
+        return path;
     }
 
     /**
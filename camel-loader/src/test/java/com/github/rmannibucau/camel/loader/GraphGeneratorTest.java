@@ -0,0 +1,63 @@
+package com.github.rmannibucau.camel.loader;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class GraphGeneratorTest {
+    @Test public void insertedProcessorKeepsTheOtherIds() throws Exception {
+        final Map<String, String> before = ids(false);
+        final Map<String, String> after = ids(true);
+
+        assertEquals(before.size() + 1, after.size());
+        for (Map.Entry<String, String> node : before.entrySet()) {
+            assertEquals(node.getValue(), after.get(node.getKey()));
+        }
+        assertNotNull(after.get("seda:audit"));
+        assertFalse(before.containsValue(after.get("seda:audit")));
+    }
+
+    @Test public void sameLabelsHaveTheirOccurrence() throws Exception {
+        final Map<String, String> ids = ids(false);
+        assertFalse(ids.get("seda:b0").equals(ids.get("seda:b1")));
+        assertEquals(7, ids.size());
+    }
+
+    // text -> id
+    private static Map<String, String> ids(final boolean audit) throws Exception {
+        final DefaultCamelContext context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            @Override public void configure() throws Exception {
+                from("direct:in")
+                    .split(body().tokenize(" "))
+                        .to("mock:split")
+                    .end()
+                    .to(audit ? "seda:audit" : "mock:split")
+                    .multicast()
+                        .to("seda:b0", "seda:b1", "seda:b2")
+                    .end()
+                    .to("seda:out");
+            }
+        });
+
+        final Diagram diagram = new Diagram();
+        new GraphGenerator(diagram).drawRoutes(context.getRouteDefinitions());
+        final Map<String, String> ids = new HashMap<String, String>();
+        for (Node node : diagram.getVertices()) {
+            ids.put(node.getText(), node.getId());
+        }
+        return ids;
+    }
+}
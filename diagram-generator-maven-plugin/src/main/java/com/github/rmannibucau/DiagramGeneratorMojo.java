@@ -1,28 +1,41 @@
 package com.github.rmannibucau;
 
+import com.github.rmannibucau.classloader.ClassLoaderCache;
+import com.github.rmannibucau.concurrent.DiagramThreadFactory;
+import com.github.rmannibucau.concurrent.RasterMemoryLimiter;
+import com.github.rmannibucau.concurrent.RasterPool;
+import com.github.rmannibucau.graph.layout.LayoutOptions;
+import com.github.rmannibucau.graph.layout.LevelLayout;
 import com.github.rmannibucau.graph.renderer.BatikRenderer;
 import com.github.rmannibucau.graph.renderer.DiagramRenderer;
 import com.github.rmannibucau.graph.renderer.GraphViewerRenderer;
+import com.github.rmannibucau.graph.renderer.Java2DRenderer;
 import com.github.rmannibucau.graph.renderer.OutputFormat;
+import com.github.rmannibucau.graph.renderer.PngCompression;
+import com.github.rmannibucau.incremental.DiagramIndex;
+import com.github.rmannibucau.incremental.Fingerprint;
+import com.github.rmannibucau.incremental.Fingerprints;
+import com.github.rmannibucau.loader.spi.DiagramGeneratorRuntimeException;
 import com.github.rmannibucau.loader.spi.FileType;
-import com.github.rmannibucau.loader.spi.Loader;
 import com.github.rmannibucau.loader.spi.LoaderHelper;
-import com.github.rmannibucau.loader.spi.graph.Diagram;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 
-import java.awt.*;
 import java.io.File;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Romain Manni-Bucau
@@ -58,78 +71,253 @@ public class DiagramGeneratorMojo extends AbstractMojo {
   @Parameter(property = "diagram.fileType", defaultValue = "xml")
   private String fileType;
 
+  /**
+   * Output formats separated by commas (png, jpg, svg or svgz), all written from the same load and layout.
+   */
   @Parameter(property = "diagram.format", defaultValue = "png")
   private String format;
 
+  /**
+   * Renderer: viewer (headless Java2D painting of the JUNG viewer pictures, Swing only when view is true), java2d or batik.
+   */
   @Parameter(property = "diagram.renderer", defaultValue = "viewer")
   private String renderer;
 
+  /**
+   * Maximum number of down and up barycenter sweeps used to reduce edge crossings.
+   */
+  @Parameter(property = "diagram.crossingSweeps", defaultValue = "8")
+  private int crossingSweeps = LevelLayout.DEFAULT_CROSSING_SWEEPS;
+
+  /**
+   * Layout algorithm: level, force, linear or auto (chosen from the size and the cycles of each diagram).
+   */
+  @Parameter(property = "diagram.layout", defaultValue = "auto")
+  private String layout = "auto";
+
+  /**
+   * Above this number of nodes the auto layout doesn't reduce crossings.
+   */
+  @Parameter(property = "diagram.layoutMaxNodes", defaultValue = "2000")
+  private int layoutMaxNodes = LayoutOptions.DEFAULT_MAX_NODES;
+
+  /**
+   * Above this number of edges the auto layout doesn't reduce crossings.
+   */
+  @Parameter(property = "diagram.layoutMaxEdges", defaultValue = "5000")
+  private int layoutMaxEdges = LayoutOptions.DEFAULT_MAX_EDGES;
+
+  /**
+   * Above this ratio of edges closing a cycle the auto layout doesn't reduce crossings.
+   */
+  @Parameter(property = "diagram.layoutMaxCycleDensity", defaultValue = "0.3")
+  private double layoutMaxCycleDensity = LayoutOptions.DEFAULT_MAX_CYCLE_DENSITY;
+
+  /**
+   * Time (in ms) the crossing reduction of a diagram can take before keeping its best order, 0 for no limit.
+   */
+  @Parameter(property = "diagram.layoutBudget", defaultValue = "10000")
+  private long layoutBudget = LayoutOptions.DEFAULT_BUDGET;
+
+  /**
+   * Number of diagrams rendered concurrently, 0 means one per available core.
+   */
+  @Parameter(property = "diagram.threads", defaultValue = "0")
+  private int threads;
+
+  /**
+   * Maximum memory (in MB) used by the rasters rendered at the same time, 0 disables the limit. A pooled
+   * picture counts with its whole size (rounded up), not only the borrowed part.
+   */
+  @Parameter(property = "diagram.rasterMemory", defaultValue = "256")
+  private int rasterMemory;
+
+  /**
+   * Maximum memory (in MB) kept between two diagrams to reuse their pictures and buffers, 0 disables the reuse.
+   * This idle memory comes in addition to rasterMemory: the rasters use up to rasterMemory plus rasterPool.
+   */
+  @Parameter(property = "diagram.rasterPool", defaultValue = "64")
+  private int rasterPool = 64;
+
+  /**
+   * Height (in pixels) of the strips a png picture is painted and encoded by, 0 tiles only pictures bigger
+   * than 64MB, a negative value never tiles.
+   */
+  @Parameter(property = "diagram.tileHeight", defaultValue = "0")
+  private int tileHeight;
+
+  /**
+   * Compression of the png pictures: fast, balanced or small.
+   */
+  @Parameter(property = "diagram.pngCompression", defaultValue = "balanced")
+  private String pngCompression = "balanced";
+
+  /**
+   * Writer of the svg diagrams of the batik renderer: stream (elements written while the diagram is walked,
+   * boxes, icons and arrow heads are shared definitions) or dom (document of the Batik SVGGraphics2D,
+   * every node and arrow head drawn inline so bigger documents).
+   */
+  @Parameter(property = "diagram.svgWriter", defaultValue = "stream")
+  private String svgWriter = "stream";
+
+  /**
+   * Skips the diagrams whose input and settings didn't change since the last generation.
+   */
+  @Parameter(property = "diagram.incremental", defaultValue = "true")
+  private boolean incremental = true;
+
   @Parameter
   private List<String> additionalClasspathElements;
 
+  @Parameter(defaultValue = "${session}", readonly = true)
+  private MavenSession session;
+
+  private RasterMemoryLimiter rasterMemoryLimiter;
+
+  private RasterPool rasterBufferPool;
+
+  private ExecutorService layoutExecutor;
+
+  private ExecutorService encoderExecutor;
+
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
 
-    final ClassLoader oldClassloader = setClassLoader();
-
+    final ClassLoader oldClassloader = Thread.currentThread().getContextClassLoader();
+    final ClassLoaderCache.Entry classLoader = setClassLoader();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threadCount(),
+        new DiagramThreadFactory("diagram-generator", Thread.currentThread().getContextClassLoader()));
+    // separate pool: render tasks wait for the components they split
+    layoutExecutor = Executors.newFixedThreadPool(threadCount(),
+        new DiagramThreadFactory("diagram-layout", Thread.currentThread().getContextClassLoader()));
+    // formats of a diagram encoded concurrently, they wait for the png blocks deflated in the layout pool
+    encoderExecutor = Executors.newCachedThreadPool(
+        new DiagramThreadFactory("diagram-encoder", Thread.currentThread().getContextClassLoader()));
     try {
       initOutput();
-      final Loader loader = LoaderHelper.getLoader(type);
-      final List<Diagram> diagrams = loader.load(input, FileType.valueOf(fileType.toUpperCase()));
-      for (Diagram diagram : diagrams) {
-        createRenderer().render(diagram, width, height, OutputFormat.valueOf(format.toUpperCase()), output);
+      rasterMemoryLimiter = new RasterMemoryLimiter(rasterMemory > 0 ? rasterMemory * 1024L * 1024L : Long.MAX_VALUE);
+      rasterBufferPool = new RasterPool(rasterPool * 1024L * 1024L);
+
+      final FileType inputType = FileType.valueOf(fileType.toUpperCase());
+      final List<OutputFormat> outputFormats = outputFormats();
+      if (!renderer.equalsIgnoreCase("batik")
+          && (outputFormats.contains(OutputFormat.SVG) || outputFormats.contains(OutputFormat.SVGZ))) {
+        throw new IllegalArgumentException("svg and svgz formats need the batik renderer, not " + renderer);
+      }
+      PngCompression.valueOf(pngCompression.toUpperCase()); // fails before rendering on an unknown level
+      if (!"stream".equalsIgnoreCase(svgWriter) && !"dom".equalsIgnoreCase(svgWriter)) {
+        throw new IllegalArgumentException("Unknown svg writer: " + svgWriter);
       }
+      final String settings = settingsFingerprint();
+
+      // diagrams are always loaded: the files they come from (imports, classes) can't all be known before
+      DiagramIndex index = null;
+      if (incremental) {
+        index = DiagramIndex.load(output);
+      }
+
+      final RenderPipeline pipeline = new RenderPipeline(this, executor, 2 * threadCount(),
+          outputFormats, output, settings, index);
+      try {
+        LoaderHelper.load(classLoader.getLoader(type), input, inputType, pipeline);
+        pipeline.finish();
+      } catch (DiagramGeneratorRuntimeException e) {
+        throw new MojoExecutionException(e.getMessage(), e);
+      }
+
+      if (index != null) {
+        index.save();
+        getLog().info("Diagrams: " + pipeline.getReused() + " reused, " + pipeline.getRegenerated() + " regenerated");
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("can't read or write the diagram index", e);
     } finally {
+      executor.shutdownNow();
+      layoutExecutor.shutdownNow();
+      encoderExecutor.shutdownNow();
       Thread.currentThread().setContextClassLoader(oldClassloader);
+      releaseClassLoader(classLoader);
     }
   }
 
-  private ClassLoader setClassLoader() {
-    final ClassLoader oldClassloader = Thread.currentThread().getContextClassLoader();
-    final ClassLoader extendedClassloader = classloaderWithAdditionalElements();
-
-    Thread.currentThread().setContextClassLoader(extendedClassloader);
-    return oldClassloader;
+  private String settingsFingerprint() {
+    return new Fingerprint()
+        .add(Fingerprints.pluginVersion())
+        .add(type).add(renderer)
+        .add(Integer.toString(width)).add(Integer.toString(height)).add(Boolean.toString(adjust)).add(Boolean.toString(view))
+        .add(Integer.toString(crossingSweeps))
+        .add(layout).add(Integer.toString(layoutMaxNodes)).add(Integer.toString(layoutMaxEdges))
+        .add(Double.toString(layoutMaxCycleDensity)).add(Long.toString(layoutBudget))
+        .add(Integer.toString(tileHeight))
+        .add(pngCompression.toLowerCase()).add(svgWriter.toLowerCase())
+        .value();
   }
 
-  private DiagramRenderer createRenderer() {
-    if (renderer.equalsIgnoreCase("viewer")) {
-      return new GraphViewerRenderer(this);
-    } else if (renderer.equalsIgnoreCase("batik")) {
-      return new BatikRenderer();
+  // configured order, without duplicates
+  private List<OutputFormat> outputFormats() {
+    final Set<OutputFormat> formats = new LinkedHashSet<OutputFormat>();
+    for (String value : format.split(",")) {
+      if (!value.trim().isEmpty()) {
+        formats.add(OutputFormat.valueOf(value.trim().toUpperCase()));
+      }
     }
-    throw new IllegalArgumentException("Unknown renderer specified.");
+    if (formats.isEmpty()) {
+      throw new IllegalArgumentException("No output format specified.");
+    }
+    return new ArrayList<OutputFormat>(formats);
   }
 
-  private void initOutput() {
-    // saving it too
-    if (!output.exists()) {
-      output.mkdirs();
+  private int threadCount() {
+    if (view) { // windows are shown one by one
+      return 1;
+    }
+    if (threads > 0) {
+      return threads;
     }
+    return Runtime.getRuntime().availableProcessors();
   }
 
-  private ClassLoader classloaderWithAdditionalElements() {
-    final ClassLoader cl = Thread.currentThread().getContextClassLoader();
+  private ClassLoaderCache.Entry setClassLoader() {
     if (additionalClasspathElements == null || additionalClasspathElements.isEmpty()) {
       additionalClasspathElements = new ArrayList<String>();
       additionalClasspathElements.add("target/classes");
     }
 
-    final List<URL> urls = new ArrayList<URL>(additionalClasspathElements.size());
-    for (String add : additionalClasspathElements) {
-      final File file = new File(add);
-      if (file.exists()) {
-        try {
-          urls.add(file.toURI().toURL());
-        } catch (MalformedURLException e) {
-          getLog().warn("Ignoring '" + add + "'", e);
-        }
-      } else {
-        getLog().warn("Ignoring '" + add + "' since it doesn't exist.");
-      }
+    if (session != null && session.getRequest() != null) {
+      ClassLoaderCache.closeAtSessionEnd(session.getRequest(), getLog());
     }
+    final ClassLoaderCache.Entry entry = ClassLoaderCache.acquire(additionalClasspathElements,
+        Thread.currentThread().getContextClassLoader(), getLog());
+    Thread.currentThread().setContextClassLoader(entry.getClassLoader());
+    return entry;
+  }
+
+  private void releaseClassLoader(ClassLoaderCache.Entry entry) {
+    ClassLoaderCache.release(entry, getLog());
 
-    return new URLClassLoader(urls.toArray(new URL[urls.size()]), cl);
+    // standalone execution: nothing will reuse them, in a build they are closed with the session
+    if (session == null || session.getRequest() == null) {
+      ClassLoaderCache.close(getLog());
+    }
+  }
+
+  DiagramRenderer createRenderer(Log log) {
+    if (renderer.equalsIgnoreCase("viewer") && view) {
+      return new GraphViewerRenderer(this, log, rasterMemoryLimiter, rasterBufferPool, layoutExecutor, encoderExecutor);
+    } else if (renderer.equalsIgnoreCase("viewer") || renderer.equalsIgnoreCase("java2d")) { // same pictures, no swing
+      return new Java2DRenderer(this, log, rasterMemoryLimiter, rasterBufferPool, layoutExecutor, encoderExecutor);
+    } else if (renderer.equalsIgnoreCase("batik")) {
+      return new BatikRenderer(this, log, rasterMemoryLimiter, rasterBufferPool, layoutExecutor, encoderExecutor);
+    }
+    throw new IllegalArgumentException("Unknown renderer specified.");
+  }
+
+  private void initOutput() {
+    // saving it too
+    if (!output.exists()) {
+      output.mkdirs();
+    }
   }
 
   public List<String> getAdditionalClasspathElements() {
@@ -220,4 +408,107 @@ public class DiagramGeneratorMojo extends AbstractMojo {
     this.renderer = renderer;
   }
 
+  public int getCrossingSweeps() {
+    return crossingSweeps;
+  }
+
+  public void setCrossingSweeps(int crossingSweeps) {
+    this.crossingSweeps = crossingSweeps;
+  }
+
+  public String getLayout() {
+    return layout;
+  }
+
+  public void setLayout(String layout) {
+    this.layout = layout;
+  }
+
+  public int getLayoutMaxNodes() {
+    return layoutMaxNodes;
+  }
+
+  public void setLayoutMaxNodes(int layoutMaxNodes) {
+    this.layoutMaxNodes = layoutMaxNodes;
+  }
+
+  public int getLayoutMaxEdges() {
+    return layoutMaxEdges;
+  }
+
+  public void setLayoutMaxEdges(int layoutMaxEdges) {
+    this.layoutMaxEdges = layoutMaxEdges;
+  }
+
+  public double getLayoutMaxCycleDensity() {
+    return layoutMaxCycleDensity;
+  }
+
+  public void setLayoutMaxCycleDensity(double layoutMaxCycleDensity) {
+    this.layoutMaxCycleDensity = layoutMaxCycleDensity;
+  }
+
+  public long getLayoutBudget() {
+    return layoutBudget;
+  }
+
+  public void setLayoutBudget(long layoutBudget) {
+    this.layoutBudget = layoutBudget;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public int getRasterMemory() {
+    return rasterMemory;
+  }
+
+  public void setRasterMemory(int rasterMemory) {
+    this.rasterMemory = rasterMemory;
+  }
+
+  public int getTileHeight() {
+    return tileHeight;
+  }
+
+  public void setTileHeight(int tileHeight) {
+    this.tileHeight = tileHeight;
+  }
+
+  public String getPngCompression() {
+    return pngCompression;
+  }
+
+  public void setPngCompression(String pngCompression) {
+    this.pngCompression = pngCompression;
+  }
+
+  public String getSvgWriter() {
+    return svgWriter;
+  }
+
+  public void setSvgWriter(String svgWriter) {
+    this.svgWriter = svgWriter;
+  }
+
+  public int getRasterPool() {
+    return rasterPool;
+  }
+
+  public void setRasterPool(int rasterPool) {
+    this.rasterPool = rasterPool;
+  }
 }
@@ -0,0 +1,135 @@
+package com.github.rmannibucau;
+
+import com.github.rmannibucau.concurrent.BufferedLog;
+import com.github.rmannibucau.graph.renderer.OutputFormat;
+import com.github.rmannibucau.incremental.DiagramIndex;
+import com.github.rmannibucau.incremental.Fingerprint;
+import com.github.rmannibucau.incremental.Fingerprints;
+import com.github.rmannibucau.loader.spi.DiagramGeneratorRuntimeException;
+import com.github.rmannibucau.loader.spi.DiagramListener;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Renders the diagrams while the loader is still building the next ones.
+ *
+ * The number of diagrams in flight is bounded so loaded graphs don't pile up
+ * on the heap when the loader is faster than the renderers.
+ *
+ * Each format is a file of the index: only the out of date ones are
+ * rendered again, all from the same layout.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class RenderPipeline implements DiagramListener {
+  private final DiagramGeneratorMojo mojo;
+  private final ExecutorService executor;
+  private final int maxInFlight;
+  private final List<OutputFormat> formats;
+  private final File output;
+  private final String settings;
+  private final DiagramIndex index;
+  private final Log log;
+
+  private final Queue<PendingDiagram> pending = new LinkedList<PendingDiagram>();
+  private int reused;
+  private int regenerated;
+
+  public RenderPipeline(DiagramGeneratorMojo mojo, ExecutorService executor, int maxInFlight,
+                        List<OutputFormat> formats, File output, String settings, DiagramIndex index) {
+    this.mojo = mojo;
+    this.executor = executor;
+    this.maxInFlight = maxInFlight;
+    this.formats = formats;
+    this.output = output;
+    this.settings = settings;
+    this.index = index;
+    this.log = mojo.getLog();
+  }
+
+  @Override
+  public void onDiagram(Diagram diagram) {
+    final String fingerprint = new Fingerprint().add(settings).add(Fingerprints.diagram(diagram)).value();
+    final List<OutputFormat> stale = new ArrayList<OutputFormat>(formats.size());
+    final List<String> files = new ArrayList<String>(formats.size());
+    for (OutputFormat format : formats) {
+      final String file = diagram.getName() + "." + format.getExtension();
+      if (index != null && index.isUpToDate(file, fingerprint)) {
+        index.generated(file, fingerprint);
+      } else {
+        stale.add(format);
+        files.add(file);
+      }
+    }
+    if (stale.isEmpty()) {
+      reused++;
+      return;
+    }
+
+    while (pending.size() >= maxInFlight) {
+      drain();
+    }
+    pending.add(new PendingDiagram(diagram.getName(), files, fingerprint,
+        executor.submit(new RenderTask(mojo, diagram, stale, output))));
+  }
+
+  /**
+   * Waits for the remaining diagrams.
+   */
+  public void finish() {
+    while (!pending.isEmpty()) {
+      drain();
+    }
+  }
+
+  // logs are replayed in submission order to keep the output readable
+  private void drain() {
+    final PendingDiagram diagram = pending.remove();
+    try {
+      diagram.result.get().replay(log);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DiagramGeneratorRuntimeException("interrupted while rendering " + diagram.name, e);
+    } catch (ExecutionException e) {
+      throw new DiagramGeneratorRuntimeException("can't render diagram " + diagram.name, e.getCause());
+    }
+
+    if (index != null) {
+      for (String file : diagram.files) {
+        index.generated(file, diagram.fingerprint);
+      }
+    }
+    regenerated++;
+  }
+
+  public int getReused() {
+    return reused;
+  }
+
+  public int getRegenerated() {
+    return regenerated;
+  }
+
+  private static class PendingDiagram {
+    private final String name;
+    private final List<String> files;
+    private final String fingerprint;
+    private final Future<BufferedLog> result;
+
+    private PendingDiagram(String name, List<String> files, String fingerprint, Future<BufferedLog> result) {
+      this.name = name;
+      this.files = files;
+      this.fingerprint = fingerprint;
+      this.result = result;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.github.rmannibucau;
+
+import com.github.rmannibucau.concurrent.BufferedLog;
+import com.github.rmannibucau.graph.renderer.DiagramRenderer;
+import com.github.rmannibucau.graph.renderer.OutputFormat;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Lays out, renders and writes a single diagram with its own renderer,
+ * in all the formats from the same layout.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class RenderTask implements Callable<BufferedLog> {
+  private final DiagramGeneratorMojo mojo;
+  private Diagram diagram;
+  private final List<OutputFormat> formats;
+  private final File output;
+
+  public RenderTask(DiagramGeneratorMojo mojo, Diagram diagram, List<OutputFormat> formats, File output) {
+    this.mojo = mojo;
+    this.diagram = diagram;
+    this.formats = formats;
+    this.output = output;
+  }
+
+  @Override
+  public BufferedLog call() throws Exception {
+    final BufferedLog log = new BufferedLog(mojo.getLog());
+    final long start = System.currentTimeMillis();
+    final String name = diagram.getName();
+    try {
+      final DiagramRenderer renderer = mojo.createRenderer(log);
+      renderer.render(diagram, mojo.getWidth(), mojo.getHeight(), formats, output);
+    } finally {
+      diagram = null; // the future can outlive the rendering, don't keep the graph
+    }
+    log.info("rendered diagram '" + name + "' in " + (System.currentTimeMillis() - start) + " ms");
+    return log;
+  }
+}
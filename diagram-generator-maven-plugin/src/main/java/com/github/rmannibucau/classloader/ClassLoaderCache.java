@@ -0,0 +1,201 @@
+package com.github.rmannibucau.classloader;
+
+import com.github.rmannibucau.incremental.Fingerprint;
+import com.github.rmannibucau.loader.spi.Loader;
+import com.github.rmannibucau.loader.spi.LoaderHelper;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares the classloaders built from the additional classpath elements
+ * (and the loaders found in them) between the executions of a build.
+ *
+ * Entries are keyed by the paths of the elements and by a stamp of their
+ * content so a rebuilt jar gets a fresh classloader. Directories are
+ * stamped once per session: a module is built once in a session and the
+ * cache is closed when the session ends ({@link #closeAtSessionEnd}).
+ *
+ * @author Romain Manni-Bucau
+ */
+public final class ClassLoaderCache {
+  private static final Map<String, Entry> ENTRIES = new HashMap<String, Entry>();
+  private static final Map<String, String> DIRECTORY_STAMPS = new HashMap<String, String>(); // guarded by ENTRIES
+
+  private ClassLoaderCache() {
+    // no-op
+  }
+
+  public static Entry acquire(List<String> elements, ClassLoader parent, Log log) {
+    final List<URL> urls = new ArrayList<URL>(elements.size());
+    final Fingerprint paths = new Fingerprint().add(Integer.toString(System.identityHashCode(parent)));
+    final Fingerprint stamp = new Fingerprint();
+    for (String add : elements) {
+      final File file = new File(add);
+      if (file.exists()) {
+        try {
+          urls.add(file.toURI().toURL());
+          paths.add(file.getAbsolutePath());
+          if (file.isDirectory()) {
+            stamp.add(directoryStamp(file));
+          } else {
+            stamp(stamp, file);
+          }
+        } catch (MalformedURLException e) {
+          log.warn("Ignoring '" + add + "'", e);
+        }
+      } else {
+        log.warn("Ignoring '" + add + "' since it doesn't exist.");
+      }
+    }
+
+    final String key = paths.value();
+    final String content = stamp.value();
+    synchronized (ENTRIES) {
+      final Entry existing = ENTRIES.get(key);
+      if (existing != null && existing.parent == parent && existing.content.equals(content)) {
+        existing.users++;
+        log.debug("Reusing classloader for " + urls);
+        return existing;
+      }
+      if (existing != null) { // outdated
+        existing.closeRequested = true;
+        existing.closeIfUnused(log);
+      }
+
+      final Entry entry = new Entry(content, parent, new URLClassLoader(urls.toArray(new URL[urls.size()]), parent));
+      entry.users++;
+      ENTRIES.put(key, entry);
+      return entry;
+    }
+  }
+
+  public static void release(Entry entry, Log log) {
+    synchronized (ENTRIES) {
+      entry.users--;
+      entry.closeIfUnused(log);
+    }
+  }
+
+  /**
+   * Closes all the classloaders, the ones still in use are closed once released.
+   */
+  public static void close(Log log) {
+    synchronized (ENTRIES) {
+      for (Entry entry : ENTRIES.values()) {
+        entry.closeRequested = true;
+        entry.closeIfUnused(log);
+      }
+      ENTRIES.clear();
+      DIRECTORY_STAMPS.clear();
+    }
+  }
+
+  /**
+   * Closes the cache when the build ends, installed once per build (the request is shared by its modules).
+   */
+  public static void closeAtSessionEnd(MavenExecutionRequest request, Log log) {
+    synchronized (request) {
+      if (!(request.getExecutionListener() instanceof SessionEndListener)) {
+        request.setExecutionListener(new SessionEndListener(request.getExecutionListener(), log));
+      }
+    }
+  }
+
+  private static String directoryStamp(File dir) {
+    final String path = dir.getAbsolutePath();
+    synchronized (ENTRIES) {
+      final String known = DIRECTORY_STAMPS.get(path);
+      if (known != null) {
+        return known;
+      }
+    }
+
+    final Fingerprint stamp = new Fingerprint();
+    stamp(stamp, dir);
+    final String value = stamp.value();
+    synchronized (ENTRIES) {
+      DIRECTORY_STAMPS.put(path, value);
+    }
+    return value;
+  }
+
+  // files are stamped by size and date, directories are walked
+  private static void stamp(Fingerprint stamp, File file) {
+    if (file.isDirectory()) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+        for (File child : children) {
+          stamp(stamp, child);
+        }
+      }
+    } else {
+      stamp.add(file.getPath()).add(Long.toString(file.length())).add(Long.toString(file.lastModified()));
+    }
+  }
+
+  public static class Entry {
+    private final String content;
+    private final ClassLoader parent;
+    private final URLClassLoader classLoader;
+    private final Map<String, Loader> loaders = new HashMap<String, Loader>();
+    private int users;
+    private boolean closeRequested;
+    private boolean closed;
+
+    private Entry(String content, ClassLoader parent, URLClassLoader classLoader) {
+      this.content = content;
+      this.parent = parent;
+      this.classLoader = classLoader;
+    }
+
+    boolean isClosed() {
+      synchronized (ENTRIES) {
+        return closed;
+      }
+    }
+
+    public ClassLoader getClassLoader() {
+      return classLoader;
+    }
+
+    public Loader getLoader(String key) {
+      synchronized (loaders) {
+        Loader loader = loaders.get(key);
+        if (loader == null) {
+          loader = LoaderHelper.getLoader(key, classLoader);
+          loaders.put(key, loader);
+        }
+        return loader;
+      }
+    }
+
+    private void closeIfUnused(Log log) {
+      if (!closeRequested || users > 0 || closed) {
+        return;
+      }
+      closed = true;
+
+      synchronized (loaders) {
+        loaders.clear();
+      }
+      if (classLoader instanceof Closeable) { // java 7
+        try {
+          ((Closeable) classLoader).close();
+        } catch (IOException e) {
+          log.warn("can't close classloader", e);
+        }
+      }
+    }
+  }
+}
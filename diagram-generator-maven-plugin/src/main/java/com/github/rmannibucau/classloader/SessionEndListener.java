@@ -0,0 +1,133 @@
+package com.github.rmannibucau.classloader;
+
+import com.github.rmannibucau.loader.spi.graph.IconCache;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Execution listener of the build wrapping the one Maven set, it closes
+ * the {@link ClassLoaderCache} (and forgets the icons read from its jars)
+ * once the session ends whatever the order the modules were built in.
+ *
+ * Maven reads the listener of the request for each event so it can be
+ * installed by the first execution of the plugin.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class SessionEndListener implements ExecutionListener {
+  private final ExecutionListener delegate;
+  private final Log log;
+
+  public SessionEndListener(ExecutionListener delegate, Log log) {
+    this.delegate = delegate;
+    this.log = log;
+  }
+
+  @Override public void sessionEnded(ExecutionEvent event) {
+    try {
+      if (delegate != null) {
+        delegate.sessionEnded(event);
+      }
+    } finally {
+      ClassLoaderCache.close(log);
+      IconCache.clear();
+    }
+  }
+
+  @Override public void projectDiscoveryStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectDiscoveryStarted(event);
+    }
+  }
+
+  @Override public void sessionStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.sessionStarted(event);
+    }
+  }
+
+  @Override public void projectSkipped(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectSkipped(event);
+    }
+  }
+
+  @Override public void projectStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectStarted(event);
+    }
+  }
+
+  @Override public void projectSucceeded(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectSucceeded(event);
+    }
+  }
+
+  @Override public void projectFailed(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.projectFailed(event);
+    }
+  }
+
+  @Override public void mojoSkipped(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.mojoSkipped(event);
+    }
+  }
+
+  @Override public void mojoStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.mojoStarted(event);
+    }
+  }
+
+  @Override public void mojoSucceeded(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.mojoSucceeded(event);
+    }
+  }
+
+  @Override public void mojoFailed(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.mojoFailed(event);
+    }
+  }
+
+  @Override public void forkStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkStarted(event);
+    }
+  }
+
+  @Override public void forkSucceeded(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkSucceeded(event);
+    }
+  }
+
+  @Override public void forkFailed(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkFailed(event);
+    }
+  }
+
+  @Override public void forkedProjectStarted(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkedProjectStarted(event);
+    }
+  }
+
+  @Override public void forkedProjectSucceeded(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkedProjectSucceeded(event);
+    }
+  }
+
+  @Override public void forkedProjectFailed(ExecutionEvent event) {
+    if (delegate != null) {
+      delegate.forkedProjectFailed(event);
+    }
+  }
+}
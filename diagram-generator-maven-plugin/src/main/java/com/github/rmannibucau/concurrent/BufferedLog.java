@@ -0,0 +1,145 @@
+package com.github.rmannibucau.concurrent;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the messages of a task to replay them later in submission order.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class BufferedLog implements Log {
+  private enum Level {
+    DEBUG, INFO, WARN, ERROR
+  }
+
+  private final List<Entry> entries = new ArrayList<Entry>();
+  private final boolean debug;
+  private final boolean info;
+  private final boolean warn;
+  private final boolean error;
+
+  public BufferedLog(Log delegate) {
+    debug = delegate.isDebugEnabled();
+    info = delegate.isInfoEnabled();
+    warn = delegate.isWarnEnabled();
+    error = delegate.isErrorEnabled();
+  }
+
+  public synchronized void replay(Log target) {
+    for (Entry entry : entries) {
+      switch (entry.level) {
+        case DEBUG:
+          if (entry.error == null) {
+            target.debug(entry.content);
+          } else {
+            target.debug(entry.content, entry.error);
+          }
+          break;
+        case INFO:
+          if (entry.error == null) {
+            target.info(entry.content);
+          } else {
+            target.info(entry.content, entry.error);
+          }
+          break;
+        case WARN:
+          if (entry.error == null) {
+            target.warn(entry.content);
+          } else {
+            target.warn(entry.content, entry.error);
+          }
+          break;
+        default:
+          if (entry.error == null) {
+            target.error(entry.content);
+          } else {
+            target.error(entry.content, entry.error);
+          }
+      }
+    }
+    entries.clear();
+  }
+
+  private synchronized void add(Level level, CharSequence content, Throwable error) {
+    entries.add(new Entry(level, content, error));
+  }
+
+  @Override public boolean isDebugEnabled() {
+    return debug;
+  }
+
+  @Override public void debug(CharSequence content) {
+    add(Level.DEBUG, content, null);
+  }
+
+  @Override public void debug(CharSequence content, Throwable error) {
+    add(Level.DEBUG, content, error);
+  }
+
+  @Override public void debug(Throwable error) {
+    add(Level.DEBUG, "", error);
+  }
+
+  @Override public boolean isInfoEnabled() {
+    return info;
+  }
+
+  @Override public void info(CharSequence content) {
+    add(Level.INFO, content, null);
+  }
+
+  @Override public void info(CharSequence content, Throwable error) {
+    add(Level.INFO, content, error);
+  }
+
+  @Override public void info(Throwable error) {
+    add(Level.INFO, "", error);
+  }
+
+  @Override public boolean isWarnEnabled() {
+    return warn;
+  }
+
+  @Override public void warn(CharSequence content) {
+    add(Level.WARN, content, null);
+  }
+
+  @Override public void warn(CharSequence content, Throwable error) {
+    add(Level.WARN, content, error);
+  }
+
+  @Override public void warn(Throwable error) {
+    add(Level.WARN, "", error);
+  }
+
+  @Override public boolean isErrorEnabled() {
+    return error;
+  }
+
+  @Override public void error(CharSequence content) {
+    add(Level.ERROR, content, null);
+  }
+
+  @Override public void error(CharSequence content, Throwable error) {
+    add(Level.ERROR, content, error);
+  }
+
+  @Override public void error(Throwable error) {
+    add(Level.ERROR, "", error);
+  }
+
+  private static class Entry {
+    private final Level level;
+    private final CharSequence content;
+    private final Throwable error;
+
+    private Entry(Level level, CharSequence content, Throwable error) {
+      this.level = level;
+      this.content = content;
+      this.error = error;
+    }
+  }
+}
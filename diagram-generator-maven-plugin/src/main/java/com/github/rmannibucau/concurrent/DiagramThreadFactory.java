@@ -0,0 +1,28 @@
+package com.github.rmannibucau.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon worker threads sharing the classloader of the mojo
+ * (loaders and icons are resolved through it).
+ *
+ * @author Romain Manni-Bucau
+ */
+public class DiagramThreadFactory implements ThreadFactory {
+  private final AtomicInteger counter = new AtomicInteger(1);
+  private final ClassLoader classLoader;
+  private final String prefix;
+
+  public DiagramThreadFactory(String prefix, ClassLoader loader) {
+    this.prefix = prefix;
+    classLoader = loader;
+  }
+
+  @Override public Thread newThread(Runnable runnable) {
+    final Thread thread = new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+    thread.setDaemon(true);
+    thread.setContextClassLoader(classLoader);
+    return thread;
+  }
+}
@@ -0,0 +1,44 @@
+package com.github.rmannibucau.concurrent;
+
+import com.github.rmannibucau.loader.spi.DiagramGeneratorRuntimeException;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the memory used by the rasters rendered at the same time.
+ *
+ * One permit is one kilobyte, a request bigger than the whole budget
+ * takes the whole budget so a huge diagram is rendered alone.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class RasterMemoryLimiter {
+  private static final int KB = 1024;
+
+  private final Semaphore permits;
+  private final int max;
+
+  public RasterMemoryLimiter(long maxBytes) {
+    max = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / KB));
+    permits = new Semaphore(max, true);
+  }
+
+  public int acquire(long bytes) {
+    final int p = (int) Math.max(1, Math.min(max, bytes / KB));
+    try {
+      permits.acquire(p);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DiagramGeneratorRuntimeException("interrupted while waiting for raster memory", e);
+    }
+    return p;
+  }
+
+  public void release(int acquired) {
+    permits.release(acquired);
+  }
+
+  public static long argbBytes(int width, int height) {
+    return 4L * width * height;
+  }
+}
@@ -0,0 +1,155 @@
+package com.github.rmannibucau.concurrent;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Keeps the pictures and buffers of the rendered diagrams to reuse them
+ * for the next ones instead of allocating new ones for each diagram.
+ *
+ * Pictures are grouped by type and by size rounded up to {@link #BUCKET}
+ * pixels, a borrowed picture is the top left part of a pooled one with
+ * the requested size. It is cleared (all bits to 0) like a new picture.
+ * What is released when the pool already retains its maximum is dropped.
+ *
+ * The retained pictures are idle ones, they are not counted by the
+ * {@link RasterMemoryLimiter} which only bounds the pictures in use; these
+ * ones are charged with {@link #bytes(int, int)}, the size of the whole
+ * pooled picture.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class RasterPool {
+  private static final int BUCKET = 128;
+
+  private final long maxBytes;
+  private long retained;
+  private final Map<Long, LinkedList<BufferedImage>> images = new HashMap<Long, LinkedList<BufferedImage>>();
+  private final Map<Integer, LinkedList<byte[]>> buffers = new HashMap<Integer, LinkedList<byte[]>>();
+  private final Map<BufferedImage, BufferedImage> borrowed = new IdentityHashMap<BufferedImage, BufferedImage>();
+
+  /**
+   * @param maxBytes memory the pool can retain between two borrowings, 0 disables the pooling.
+   */
+  public RasterPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return the memory of the picture {@link #borrow(int, int, int)} gives for this size.
+   */
+  public long bytes(int width, int height) {
+    if (maxBytes <= 0) {
+      return RasterMemoryLimiter.argbBytes(width, height);
+    }
+    return RasterMemoryLimiter.argbBytes(roundUp(width), roundUp(height));
+  }
+
+  public BufferedImage borrow(int width, int height, int type) {
+    if (maxBytes <= 0) {
+      return new BufferedImage(width, height, type);
+    }
+
+    final int bucketWidth = roundUp(width);
+    final int bucketHeight = roundUp(height);
+
+    BufferedImage image = null;
+    synchronized (this) {
+      final LinkedList<BufferedImage> free = images.get(key(bucketWidth, bucketHeight, type));
+      if (free != null && !free.isEmpty()) {
+        image = free.removeFirst();
+        retained -= bytes(image);
+      }
+    }
+
+    final boolean reused = image != null;
+    if (!reused) {
+      image = new BufferedImage(bucketWidth, bucketHeight, type);
+    }
+    final BufferedImage region = image.getSubimage(0, 0, width, height);
+    if (reused) { // same content as a new picture
+      final Graphics2D g = region.createGraphics();
+      try {
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, width, height);
+      } finally {
+        g.dispose();
+      }
+    }
+    synchronized (this) {
+      borrowed.put(region, image);
+    }
+    return region;
+  }
+
+  public void release(BufferedImage region) {
+    synchronized (this) {
+      final BufferedImage image = borrowed.remove(region);
+      if (image == null) {
+        return;
+      }
+      final long bytes = bytes(image);
+      if (retained + bytes > maxBytes) {
+        return;
+      }
+      final Long key = key(image.getWidth(), image.getHeight(), image.getType());
+      LinkedList<BufferedImage> free = images.get(key);
+      if (free == null) {
+        free = new LinkedList<BufferedImage>();
+        images.put(key, free);
+      }
+      free.add(image);
+      retained += bytes;
+    }
+  }
+
+  /**
+   * @return a scratch buffer of exactly this size, its content is undefined.
+   */
+  public byte[] borrow(int size) {
+    synchronized (this) {
+      final LinkedList<byte[]> free = buffers.get(size);
+      if (free != null && !free.isEmpty()) {
+        retained -= size;
+        return free.removeFirst();
+      }
+    }
+    return new byte[size];
+  }
+
+  public void release(byte[] buffer) {
+    synchronized (this) {
+      if (retained + buffer.length > maxBytes) {
+        return;
+      }
+      LinkedList<byte[]> free = buffers.get(buffer.length);
+      if (free == null) {
+        free = new LinkedList<byte[]>();
+        buffers.put(buffer.length, free);
+      }
+      free.add(buffer);
+      retained += buffer.length;
+    }
+  }
+
+  public synchronized long getRetainedBytes() {
+    return retained;
+  }
+
+  private static long bytes(BufferedImage image) {
+    return RasterMemoryLimiter.argbBytes(image.getWidth(), image.getHeight());
+  }
+
+  private static int roundUp(int size) {
+    return Math.max(1, (size + BUCKET - 1) / BUCKET) * BUCKET;
+  }
+
+  private static Long key(int width, int height, int type) {
+    return ((long) type << 48) | ((long) width << 24) | height;
+  }
+}
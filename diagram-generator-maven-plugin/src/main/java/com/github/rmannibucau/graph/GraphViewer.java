@@ -1,5 +1,6 @@
 package com.github.rmannibucau.graph;
 
+import com.github.rmannibucau.graph.renderer.CullingRenderer;
 import com.github.rmannibucau.graph.renderer.EdgeLabelRenderer;
 import com.github.rmannibucau.graph.transformer.EdgeLabelClosenessTransformer;
 import com.github.rmannibucau.graph.transformer.EdgeLabelTransformer;
@@ -7,6 +8,8 @@ import com.github.rmannibucau.graph.transformer.VertexFillPaintTransformer;
 import com.github.rmannibucau.graph.transformer.VertexIconTransformer;
 import com.github.rmannibucau.graph.transformer.VertexLabelTransformer;
 import com.github.rmannibucau.graph.transformer.VertexShapeTransformer;
+import com.github.rmannibucau.graph.view.IndexPickSupport;
+import com.github.rmannibucau.graph.view.ViewIndex;
 import com.github.rmannibucau.loader.spi.graph.Edge;
 import com.github.rmannibucau.loader.spi.graph.Node;
 import edu.uci.ics.jung.algorithms.layout.Layout;
@@ -20,6 +23,9 @@ import java.awt.Color;
  * @author Romain Manni-Bucau
  */
 public class GraphViewer extends VisualizationViewer<Node, Edge> {
+    private final EdgeLabelRenderer edgeLabelRenderer = new EdgeLabelRenderer();
+    private ViewIndex index;
+
     public GraphViewer(Layout<Node, Edge> nodeEdgeLayout) {
         super(nodeEdgeLayout);
         init();
@@ -33,12 +39,35 @@ public class GraphViewer extends VisualizationViewer<Node, Edge> {
         getRenderContext().setVertexShapeTransformer(new VertexShapeTransformer(getFontMetrics(getFont())));
         getRenderContext().setVertexIconTransformer(new VertexIconTransformer());
         getRenderContext().setVertexLabelTransformer(new VertexLabelTransformer());
+        setRenderer(new CullingRenderer(this, edgeLabelRenderer));
         getRenderer().getVertexLabelRenderer().setPosition(Renderer.VertexLabel.Position.CNTR);
 
         getRenderContext().setEdgeLabelTransformer(new EdgeLabelTransformer());
         getRenderContext().setEdgeShapeTransformer(new EdgeShape.Line<Node, Edge>());
         getRenderContext().setEdgeLabelClosenessTransformer(new EdgeLabelClosenessTransformer());
         getRenderContext().getEdgeLabelRenderer().setRotateEdgeLabels(false);
-        getRenderer().setEdgeLabelRenderer(new EdgeLabelRenderer());
+        getRenderer().setEdgeLabelRenderer(edgeLabelRenderer);
+
+        setPickSupport(new IndexPickSupport(this));
+    }
+
+    /**
+     * @return the index of the current layout, up to date with the picked (so dragged) nodes.
+     */
+    public ViewIndex getIndex() {
+        final Layout<Node, Edge> layout = getGraphLayout();
+        if (index == null || index.getLayout() != layout) {
+            index = new ViewIndex(layout, getRenderContext().getVertexShapeTransformer());
+            edgeLabelRenderer.reset();
+        }
+
+        boolean moved = false;
+        for (Node node : getPickedVertexState().getPicked()) {
+            moved |= index.update(node);
+        }
+        if (moved) {
+            edgeLabelRenderer.reset();
+        }
+        return index;
     }
 }
@@ -0,0 +1,73 @@
+package com.github.rmannibucau.graph.label;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Places edge labels one after the other avoiding the node boxes and the
+ * labels already placed.
+ *
+ * A few positions along each edge (and beside them) are tried, the first
+ * free one wins; if all of them collide the label stays at the middle of
+ * the edge. Overlaps are checked through a {@link SpatialGrid} so each
+ * candidate costs O(1) expected.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class LabelPlacer {
+    public static final double DEFAULT_CELL_SIZE = 64;
+
+    // fractions of the edge where the label can be centered, preferred first
+    private static final double[] POSITIONS = { 0.5, 0.35, 0.65, 0.2, 0.8 };
+    private static final double GAP = 2;
+
+    private final SpatialGrid grid;
+    private final Rectangle2D bounds;
+
+    /**
+     * @param bounds area the labels have to stay in, null if unbounded.
+     */
+    public LabelPlacer(Rectangle2D bounds, double cellSize) {
+        this.bounds = bounds;
+        grid = new SpatialGrid(cellSize);
+    }
+
+    public void addObstacle(Rectangle2D box) {
+        grid.add(box);
+    }
+
+    /**
+     * @return the box of the label, registered as an obstacle for the next labels.
+     */
+    public Rectangle2D place(Point2D from, Point2D to, double width, double height) {
+        Rectangle2D chosen = null;
+        for (double t : POSITIONS) {
+            final double x = from.getX() + (to.getX() - from.getX()) * t;
+            final double y = from.getY() + (to.getY() - from.getY()) * t;
+            for (int side = 0; side < 3; side++) { // centered, then right, then left of the edge
+                final double shift = side == 0 ? 0 : (side == 1 ? 1 : -1) * (width / 2 + GAP);
+                final Rectangle2D candidate = box(x + shift, y, width, height);
+                if (chosen == null) { // fallback
+                    chosen = candidate;
+                }
+                if (!grid.intersects(candidate)) {
+                    grid.add(candidate);
+                    return candidate;
+                }
+            }
+        }
+
+        grid.add(chosen);
+        return chosen;
+    }
+
+    private Rectangle2D box(double centerX, double centerY, double width, double height) {
+        double x = centerX - width / 2;
+        double y = centerY - height / 2;
+        if (bounds != null) {
+            x = Math.max(bounds.getMinX(), Math.min(bounds.getMaxX() - width, x));
+            y = Math.max(bounds.getMinY(), Math.min(bounds.getMaxY() - height, y));
+        }
+        return new Rectangle2D.Double(x, y, width, height);
+    }
+}
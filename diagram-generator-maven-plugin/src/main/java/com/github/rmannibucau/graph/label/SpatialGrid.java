@@ -0,0 +1,70 @@
+package com.github.rmannibucau.graph.label;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over rectangles: a rectangle is registered in every cell it
+ * covers so an overlap query only looks at the few rectangles sharing its
+ * cells instead of all of them.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class SpatialGrid {
+    private final double cellSize;
+    private final Map<Long, List<Rectangle2D>> cells = new HashMap<Long, List<Rectangle2D>>();
+
+    public SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void add(Rectangle2D rectangle) {
+        final int minX = cell(rectangle.getMinX());
+        final int maxX = cell(rectangle.getMaxX());
+        final int minY = cell(rectangle.getMinY());
+        final int maxY = cell(rectangle.getMaxY());
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                final Long key = key(x, y);
+                List<Rectangle2D> content = cells.get(key);
+                if (content == null) {
+                    content = new ArrayList<Rectangle2D>(2);
+                    cells.put(key, content);
+                }
+                content.add(rectangle);
+            }
+        }
+    }
+
+    public boolean intersects(Rectangle2D rectangle) {
+        final int minX = cell(rectangle.getMinX());
+        final int maxX = cell(rectangle.getMaxX());
+        final int minY = cell(rectangle.getMinY());
+        final int maxY = cell(rectangle.getMaxY());
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                final List<Rectangle2D> content = cells.get(key(x, y));
+                if (content == null) {
+                    continue;
+                }
+                for (Rectangle2D other : content) {
+                    if (other.intersects(rectangle)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static Long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+
+/**
+ * Chooses the layout from the shape of the diagram: levels with crossing
+ * reduction while it is small and mostly acyclic, a force directed layout
+ * when routes call each other in cycles and the linear layout for the
+ * huge ones. Measuring the diagram is O(V + E).
+ *
+ * @author Romain Manni-Bucau
+ */
+public class AutoLayoutProvider implements LayoutProvider {
+    @Override public AbstractLayout<Node, Edge> create(final Diagram diagram, final LayoutOptions options) {
+        return select(diagram, options).create(diagram, options);
+    }
+
+    @Override public String key() {
+        return "auto";
+    }
+
+    LayoutProvider select(final Diagram diagram, final LayoutOptions options) {
+        if (diagram.getVertexCount() > options.getMaxNodes()) {
+            return linear(diagram, options, diagram.getVertexCount() + " nodes");
+        }
+        if (diagram.getEdgeCount() > options.getMaxEdges()) {
+            return linear(diagram, options, diagram.getEdgeCount() + " edges");
+        }
+
+        final LayeredGraph layered = new LayeredGraph(diagram);
+        if (layered.getEdgeCount() > 0) {
+            final double density = layered.getReversedCount() * 1. / layered.getEdgeCount();
+            if (density > options.getMaxCycleDensity()) {
+                if (options.getLog() != null) {
+                    options.getLog().info("using a force directed layout for " + diagram.getName() + " (cycle density of " + density + ")");
+                }
+                return new ForceLayoutProvider();
+            }
+        }
+        return new LevelLayoutProvider();
+    }
+
+    private static LayoutProvider linear(final Diagram diagram, final LayoutOptions options, final String reason) {
+        if (options.getLog() != null) {
+            options.getLog().info("using a linear layout for " + diagram.getName() + " (" + reason + ")");
+        }
+        return new LinearLayoutProvider();
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.rmannibucau.graph.layout;
+
+import java.util.Arrays;
+
+/**
+ * Quadtree over points approximating the repulsion of far away groups of
+ * points by their center of mass (Barnes, Hut): a force costs O(log n)
+ * instead of O(n).
+ *
+ * Cells are stored in arrays so building the tree at each iteration of a
+ * layout doesn't allocate once the arrays are large enough. Once built
+ * the tree is only read, forces can be computed concurrently.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class BarnesHutTree {
+    private static final double MIN_CELL_SIZE = 1e-3; // closer points share their leaf
+    private static final double MIN_DISTANCE = 1e-9;
+
+    private double[] x;
+    private double[] y;
+
+    private int cells;
+    private int depth;
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] size = new double[0];
+    private double[] mass = new double[0];
+    private double[] comX = new double[0];
+    private double[] comY = new double[0];
+    private int[] body = new int[0]; // point of a leaf, -1 otherwise
+    private boolean[] internal = new boolean[0];
+    private int[] children = new int[0]; // 4 per cell, -1 if not created
+
+    public void build(double[] x, double[] y, int n) {
+        this.x = x;
+        this.y = y;
+        cells = 0;
+        depth = 0;
+        if (n == 0) {
+            return;
+        }
+
+        double left = Double.MAX_VALUE;
+        double top = Double.MAX_VALUE;
+        double right = -Double.MAX_VALUE;
+        double bottom = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            left = Math.min(left, x[i]);
+            top = Math.min(top, y[i]);
+            right = Math.max(right, x[i]);
+            bottom = Math.max(bottom, y[i]);
+        }
+        ensureCapacity(2 * n + 1);
+        cell(left, top, Math.max(MIN_CELL_SIZE, Math.max(right - left, bottom - top)));
+
+        for (int i = 0; i < n; i++) {
+            insert(i);
+        }
+        for (int c = 0; c < cells; c++) {
+            if (mass[c] > 0) {
+                comX[c] /= mass[c];
+                comY[c] /= mass[c];
+            }
+        }
+    }
+
+    /**
+     * @return size of the stack buffer {@link #repulsion(int, double, double, int[], double[])} needs.
+     */
+    public int stackSize() {
+        return 3 * depth + 4;
+    }
+
+    /**
+     * Sums strength / distance in the direction of the point for each other point.
+     *
+     * @param theta size over distance ratio under which a cell is seen as a single point.
+     * @param stack buffer of at least {@link #stackSize()} cells, one per thread.
+     * @param force receives the x and y components.
+     */
+    public void repulsion(int point, double theta, double strength, int[] stack, double[] force) {
+        double fx = 0;
+        double fy = 0;
+        final double theta2 = theta * theta;
+        int top = 0;
+        if (cells > 0) {
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            final int c = stack[--top];
+            final double dx = x[point] - comX[c];
+            final double dy = y[point] - comY[c];
+            final double d2 = dx * dx + dy * dy;
+            if (!internal[c] || size[c] * size[c] < theta2 * d2) {
+                if (d2 > MIN_DISTANCE) { // the point itself (or one at the same place) doesn't push
+                    final double f = strength * mass[c] / d2;
+                    fx += dx * f;
+                    fy += dy * f;
+                }
+                continue;
+            }
+
+            for (int q = 4 * c; q < 4 * c + 4; q++) {
+                if (children[q] >= 0) {
+                    stack[top++] = children[q];
+                }
+            }
+        }
+        force[0] = fx;
+        force[1] = fy;
+    }
+
+    private void insert(int point) {
+        int c = 0;
+        int level = 0;
+        while (true) {
+            if (!internal[c]) {
+                if (mass[c] == 0) { // empty leaf
+                    add(c, point);
+                    body[c] = point;
+                    break;
+                }
+                if (size[c] < MIN_CELL_SIZE) {
+                    add(c, point);
+                    break;
+                }
+
+                final int previous = body[c];
+                internal[c] = true;
+                body[c] = -1;
+                final int moved = child(c, x[previous], y[previous]);
+                add(moved, previous);
+                body[moved] = previous;
+            }
+            add(c, point);
+            c = child(c, x[point], y[point]);
+            level++;
+        }
+        depth = Math.max(depth, level);
+    }
+
+    private void add(int c, int point) {
+        mass[c]++;
+        comX[c] += x[point];
+        comY[c] += y[point];
+    }
+
+    private int child(int c, double px, double py) {
+        final double half = size[c] / 2;
+        final int right = px >= minX[c] + half ? 1 : 0;
+        final int bottom = py >= minY[c] + half ? 1 : 0;
+        final int q = 4 * c + right + 2 * bottom;
+        if (children[q] < 0) {
+            final int created = cell(minX[c] + right * half, minY[c] + bottom * half, half);
+            children[q] = created;
+        }
+        return children[q];
+    }
+
+    private int cell(double left, double top, double side) {
+        if (cells == size.length) {
+            ensureCapacity(Math.max(16, 2 * cells));
+        }
+        final int c = cells++;
+        minX[c] = left;
+        minY[c] = top;
+        size[c] = side;
+        mass[c] = 0;
+        comX[c] = 0;
+        comY[c] = 0;
+        body[c] = -1;
+        internal[c] = false;
+        Arrays.fill(children, 4 * c, 4 * c + 4, -1);
+        return c;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (size.length >= capacity) {
+            return;
+        }
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        size = Arrays.copyOf(size, capacity);
+        mass = Arrays.copyOf(mass, capacity);
+        comX = Arrays.copyOf(comX, capacity);
+        comY = Arrays.copyOf(comY, capacity);
+        body = Arrays.copyOf(body, capacity);
+        internal = Arrays.copyOf(internal, capacity);
+        children = Arrays.copyOf(children, 4 * capacity);
+    }
+}
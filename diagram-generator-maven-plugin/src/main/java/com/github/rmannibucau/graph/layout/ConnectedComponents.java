@@ -0,0 +1,70 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.graph.Graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a diagram in its weakly connected components (edge directions
+ * are ignored) with a union find, O(V + E).
+ *
+ * @author Romain Manni-Bucau
+ */
+public final class ConnectedComponents {
+    private ConnectedComponents() {
+        // no-op
+    }
+
+    /**
+     * @return the nodes of each component, components ordered by their first node.
+     */
+    public static List<List<Node>> weak(Graph<Node, Edge> graph) {
+        final int n = graph.getVertexCount();
+        final Node[] nodes = new Node[n];
+        final Map<Node, Integer> indices = new HashMap<Node, Integer>(n * 2);
+        for (Node node : graph.getVertices()) {
+            nodes[indices.size()] = node;
+            indices.put(node, indices.size());
+        }
+
+        final int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (Edge edge : graph.getEdges()) {
+            final int a = find(parent, indices.get(graph.getSource(edge)));
+            final int b = find(parent, indices.get(graph.getDest(edge)));
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+
+        final int[] component = new int[n];
+        final List<List<Node>> components = new ArrayList<List<Node>>();
+        for (int i = 0; i < n; i++) {
+            final int root = find(parent, i);
+            if (root == i) {
+                component[i] = components.size();
+                components.add(new ArrayList<Node>());
+            } else { // the root has the lowest index so it is already numbered
+                component[i] = component[root];
+            }
+            components.get(component[i]).add(nodes[i]);
+        }
+        return components;
+    }
+
+    // path halving
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
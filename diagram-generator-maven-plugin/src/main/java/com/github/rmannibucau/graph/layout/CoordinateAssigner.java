@@ -0,0 +1,322 @@
+package com.github.rmannibucau.graph.layout;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Horizontal coordinates of an ordered {@link LevelOrder} (Brandes, Koepf).
+ *
+ * Nodes are aligned in vertical blocks with their median neighbor, in the
+ * four combinations of top/bottom and left/right, and each alignment is
+ * compacted to the left. Long edges stay straight since segments between
+ * two virtual nodes win their conflicts. The final coordinate is the
+ * average of the two median candidates, which keeps the order and the
+ * separation of the nodes.
+ *
+ * Compaction uses the graph of the blocks (an edge per pair of neighbors
+ * in a level) instead of the recursive block placement, everything is
+ * O(V + E) except the sort of the neighbors of each node.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class CoordinateAssigner {
+    private final LevelOrder levels;
+    private final double[] width;
+    private final double gap;
+
+    private double layoutWidth;
+
+    /**
+     * @param width width of each node, virtual ones included.
+     * @param gap space between two real nodes, half of it around virtual ones.
+     */
+    public CoordinateAssigner(LevelOrder levels, double[] width, double gap) {
+        this.levels = levels;
+        this.width = width;
+        this.gap = gap;
+    }
+
+    /**
+     * @return the center of each node, the left border of the layout being 0.
+     */
+    public double[] assign() {
+        final Set<Long> conflicts = markConflicts();
+
+        final double[][] candidates = new double[4][];
+        int narrowest = 0;
+        double narrowestWidth = Double.MAX_VALUE;
+        for (int direction = 0; direction < 4; direction++) {
+            final boolean fromBottom = direction >= 2;
+            final boolean fromRight = (direction & 1) == 1;
+            final int[][] view = view(fromBottom, fromRight);
+            final int[] position = new int[levels.size];
+            for (int[] level : view) {
+                for (int i = 0; i < level.length; i++) {
+                    position[level[i]] = i;
+                }
+            }
+
+            final int[] root = new int[levels.size];
+            align(view, position, fromBottom, conflicts, root);
+            final double[] x = compact(view, root);
+            if (fromRight) { // mirrored view
+                for (int v = 0; v < x.length; v++) {
+                    x[v] = -x[v];
+                }
+            }
+            candidates[direction] = x;
+
+            final double candidateWidth = max(x) - min(x);
+            if (candidateWidth < narrowestWidth) {
+                narrowestWidth = candidateWidth;
+                narrowest = direction;
+            }
+        }
+
+        // left layouts share the left border of the narrowest one, right layouts its right border
+        final double left = min(candidates[narrowest]);
+        final double right = max(candidates[narrowest]);
+        for (int direction = 0; direction < 4; direction++) {
+            final double[] x = candidates[direction];
+            final double delta = (direction & 1) == 1 ? right - max(x) : left - min(x);
+            for (int v = 0; v < x.length; v++) {
+                x[v] += delta;
+            }
+        }
+
+        final double[] x = new double[levels.size];
+        final double[] values = new double[4];
+        double minX = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        for (int v = 0; v < x.length; v++) {
+            for (int direction = 0; direction < 4; direction++) {
+                values[direction] = candidates[direction][v];
+            }
+            Arrays.sort(values);
+            x[v] = (values[1] + values[2]) / 2;
+            minX = Math.min(minX, x[v] - width[v] / 2);
+            maxX = Math.max(maxX, x[v] + width[v] / 2);
+        }
+
+        for (int v = 0; v < x.length; v++) {
+            x[v] -= minX;
+        }
+        layoutWidth = x.length == 0 ? 0 : maxX - minX;
+        return x;
+    }
+
+    /**
+     * @return the width of the last assignment.
+     */
+    public double getWidth() {
+        return layoutWidth;
+    }
+
+    // type 1 conflicts: a segment with a real end crossing a segment between two virtual nodes
+    private Set<Long> markConflicts() {
+        final Set<Long> conflicts = new HashSet<Long>();
+        for (int l = 0; l + 1 < levels.order.length; l++) {
+            final int[] upper = levels.order[l];
+            final int[] lower = levels.order[l + 1];
+
+            int k0 = 0;
+            int scanned = 0;
+            for (int l1 = 0; l1 < lower.length; l1++) {
+                final int inner = innerUpperNeighbor(lower[l1]);
+                if (l1 == lower.length - 1 || inner >= 0) {
+                    final int k1 = inner >= 0 ? levels.position[inner] : upper.length - 1;
+                    for (; scanned <= l1; scanned++) {
+                        final int v = lower[scanned];
+                        for (int p = levels.upStart[v]; p < levels.upStart[v + 1]; p++) {
+                            final int u = levels.up[p];
+                            final int k = levels.position[u];
+                            if (k < k0 || k > k1) {
+                                conflicts.add(key(u, v));
+                            }
+                        }
+                    }
+                    k0 = k1;
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    private int innerUpperNeighbor(int v) {
+        if (!levels.isVirtual(v)) {
+            return -1;
+        }
+        for (int p = levels.upStart[v]; p < levels.upStart[v + 1]; p++) {
+            if (levels.isVirtual(levels.up[p])) {
+                return levels.up[p];
+            }
+        }
+        return -1;
+    }
+
+    // levels in sweep order, each level in horizontal order
+    private int[][] view(boolean fromBottom, boolean fromRight) {
+        final int count = levels.order.length;
+        final int[][] view = new int[count][];
+        for (int l = 0; l < count; l++) {
+            final int[] level = levels.order[fromBottom ? count - 1 - l : l];
+            if (fromRight) {
+                final int[] reversed = new int[level.length];
+                for (int i = 0; i < level.length; i++) {
+                    reversed[i] = level[level.length - 1 - i];
+                }
+                view[l] = reversed;
+            } else {
+                view[l] = level.clone();
+            }
+        }
+        return view;
+    }
+
+    // vertical alignment with the median neighbors of the previous level of the view
+    private void align(int[][] view, int[] position, boolean fromBottom, Set<Long> conflicts, int[] root) {
+        final int[] align = new int[levels.size];
+        for (int v = 0; v < levels.size; v++) {
+            root[v] = v;
+            align[v] = v;
+        }
+
+        final int[] start = fromBottom ? levels.downStart : levels.upStart;
+        final int[] adjacency = fromBottom ? levels.down : levels.up;
+        int[] neighbors = new int[8];
+        for (int l = 1; l < view.length; l++) {
+            int r = -1;
+            for (int v : view[l]) {
+                final int degree = start[v + 1] - start[v];
+                if (degree == 0) {
+                    continue;
+                }
+
+                if (neighbors.length < degree) {
+                    neighbors = new int[degree];
+                }
+                for (int i = 0; i < degree; i++) { // positions of the neighbors, medians are taken once sorted
+                    neighbors[i] = position[adjacency[start[v] + i]];
+                }
+                Arrays.sort(neighbors, 0, degree);
+
+                for (int m = (degree - 1) / 2; m <= degree / 2; m++) {
+                    if (align[v] != v) {
+                        break;
+                    }
+
+                    final int u = view[l - 1][neighbors[m]];
+                    final long conflict = fromBottom ? key(v, u) : key(u, v);
+                    if (r < position[u] && !conflicts.contains(conflict)) {
+                        align[u] = v;
+                        root[v] = root[u];
+                        align[v] = root[v];
+                        r = position[u];
+                    }
+                }
+            }
+        }
+    }
+
+    // blocks pushed to the left by their left neighbors then pulled right when there is room
+    private double[] compact(int[][] view, int[] root) {
+        final int n = levels.size;
+        int edges = 0;
+        for (int[] level : view) {
+            edges += Math.max(0, level.length - 1);
+        }
+
+        final int[] from = new int[edges];
+        final int[] to = new int[edges];
+        final double[] separation = new double[edges];
+        int m = 0;
+        for (int[] level : view) {
+            for (int i = 1; i < level.length; i++) {
+                from[m] = root[level[i - 1]];
+                to[m] = root[level[i]];
+                separation[m] = separation(level[i - 1], level[i]);
+                m++;
+            }
+        }
+
+        final int[] outStart = new int[n + 1];
+        final int[] out = new int[m];
+        final int[] outEdge = new int[m];
+        LayeredGraph.fill(from, to, m, outStart, out, outEdge);
+        final int[] inStart = new int[n + 1];
+        final int[] in = new int[m];
+        final int[] inEdge = new int[m];
+        LayeredGraph.fill(to, from, m, inStart, in, inEdge);
+
+        // topological order of the roots (the block graph is acyclic)
+        final int[] remaining = new int[n];
+        final int[] queue = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            remaining[v] = inStart[v + 1] - inStart[v];
+            if (root[v] == v && remaining[v] == 0) {
+                queue[tail++] = v;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            final int b = queue[head];
+            for (int p = outStart[b]; p < outStart[b + 1]; p++) {
+                if (--remaining[out[p]] == 0) {
+                    queue[tail++] = out[p];
+                }
+            }
+        }
+
+        final double[] xs = new double[n];
+        for (int i = 0; i < tail; i++) {
+            final int b = queue[i];
+            double x = 0;
+            for (int p = inStart[b]; p < inStart[b + 1]; p++) {
+                x = Math.max(x, xs[in[p]] + separation[inEdge[p]]);
+            }
+            xs[b] = x;
+        }
+        for (int i = tail - 1; i >= 0; i--) {
+            final int b = queue[i];
+            double x = Double.MAX_VALUE;
+            for (int p = outStart[b]; p < outStart[b + 1]; p++) {
+                x = Math.min(x, xs[out[p]] - separation[outEdge[p]]);
+            }
+            if (x != Double.MAX_VALUE && x > xs[b]) {
+                xs[b] = x;
+            }
+        }
+
+        final double[] x = new double[n];
+        for (int v = 0; v < n; v++) {
+            x[v] = xs[root[v]];
+        }
+        return x;
+    }
+
+    private double separation(int left, int right) {
+        final boolean real = !levels.isVirtual(left) && !levels.isVirtual(right);
+        return (width[left] + width[right]) / 2 + (real ? gap : gap / 2);
+    }
+
+    private long key(int upper, int lower) {
+        return (long) upper * levels.size + lower;
+    }
+
+    private static double min(double[] values) {
+        double min = Double.MAX_VALUE;
+        for (double v : values) {
+            min = Math.min(min, v);
+        }
+        return min;
+    }
+
+    private static double max(double[] values) {
+        double max = -Double.MAX_VALUE;
+        for (double v : values) {
+            max = Math.max(max, v);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.rmannibucau.graph.layout;
+
+import java.util.Arrays;
+
+/**
+ * Layer sweep crossing reduction: nodes of a level are sorted by the
+ * barycenter of their neighbors in the previous (down sweep) or next
+ * (up sweep) level. The best order seen is kept and sweeping stops as
+ * soon as a round doesn't reduce the crossings.
+ *
+ * Crossings between two levels are counted with an accumulator tree
+ * (Barth, Juenger, Mutzel) in O(E log V).
+ *
+ * @author Romain Manni-Bucau
+ */
+public class CrossingMinimizer {
+    private final LevelOrder levels;
+    private final double[] barycenter;
+    private final boolean[] frozen;
+    private int[] sortBuffer = new int[0];
+    private long deadline;
+    private boolean timedOut;
+
+    public CrossingMinimizer(LevelOrder levels) {
+        this.levels = levels;
+        barycenter = new double[levels.size];
+        frozen = new boolean[levels.order.length];
+    }
+
+    /**
+     * @param level a level whose current order is kept by the sweeps.
+     */
+    public void freeze(int level) {
+        frozen[level] = true;
+    }
+
+    /**
+     * @param deadline {@link System#nanoTime()} after which sweeping stops, 0 for none.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return true if the last minimization stopped at the deadline.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @param sweeps maximum number of down + up rounds.
+     * @return the number of crossings of the retained order.
+     */
+    public long minimize(int sweeps) {
+        long best = crossings();
+        int[][] bestOrder = copy(levels.order);
+        timedOut = false;
+        for (int i = 0; i < sweeps && best > 0 && !timedOut; i++) {
+            for (int l = 1; l < levels.order.length && !isLate(); l++) {
+                sort(l, levels.upStart, levels.up);
+            }
+            for (int l = levels.order.length - 2; l >= 0 && !isLate(); l--) {
+                sort(l, levels.downStart, levels.down);
+            }
+
+            final long current = crossings();
+            if (current >= best) {
+                break;
+            }
+            best = current;
+            bestOrder = copy(levels.order);
+        }
+
+        for (int l = 0; l < bestOrder.length; l++) {
+            levels.setLevel(l, bestOrder[l]);
+        }
+        return best;
+    }
+
+    private boolean isLate() {
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            timedOut = true;
+        }
+        return timedOut;
+    }
+
+    public long crossings() {
+        long total = 0;
+        for (int l = 0; l + 1 < levels.order.length; l++) {
+            total += crossings(l);
+        }
+        return total;
+    }
+
+    // sorts a level by the mean position of the neighbors found in start/adjacency
+    private void sort(int l, int[] start, int[] adjacency) {
+        if (frozen[l]) {
+            return;
+        }
+
+        final int[] nodes = levels.order[l];
+        for (int v : nodes) {
+            final int count = start[v + 1] - start[v];
+            if (count == 0) { // no neighbor: keep its place
+                barycenter[v] = levels.position[v];
+                continue;
+            }
+
+            double sum = 0;
+            for (int p = start[v]; p < start[v + 1]; p++) {
+                sum += levels.position[adjacency[p]];
+            }
+            barycenter[v] = sum / count;
+        }
+
+        mergeSort(nodes);
+        levels.setLevel(l, nodes);
+    }
+
+    private long crossings(int l) {
+        final int[] upper = levels.order[l];
+        final int lowerSize = levels.order[l + 1].length;
+        if (upper.length < 2 || lowerSize < 2) {
+            return 0;
+        }
+
+        // fenwick tree over the positions of the lower level
+        final int[] tree = new int[lowerSize + 1];
+        int[] targets = new int[8];
+        long crossings = 0;
+        int inserted = 0;
+        for (int v : upper) {
+            final int count = levels.downStart[v + 1] - levels.downStart[v];
+            if (targets.length < count) {
+                targets = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                targets[i] = levels.position[levels.down[levels.downStart[v] + i]];
+            }
+            Arrays.sort(targets, 0, count);
+
+            for (int i = 0; i < count; i++) {
+                int before = 0; // inserted edges ending at or before the target
+                for (int k = targets[i] + 1; k > 0; k -= k & -k) {
+                    before += tree[k];
+                }
+                crossings += inserted - before;
+            }
+            for (int i = 0; i < count; i++) {
+                for (int k = targets[i] + 1; k <= lowerSize; k += k & -k) {
+                    tree[k]++;
+                }
+                inserted++;
+            }
+        }
+        return crossings;
+    }
+
+    // stable so equal barycenters keep their relative order
+    private void mergeSort(int[] nodes) {
+        if (sortBuffer.length < nodes.length) {
+            sortBuffer = new int[nodes.length];
+        }
+        for (int width = 1; width < nodes.length; width *= 2) {
+            for (int low = 0; low < nodes.length - width; low += 2 * width) {
+                final int middle = low + width;
+                final int high = Math.min(low + 2 * width, nodes.length);
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    sortBuffer[k++] = barycenter[nodes[j]] < barycenter[nodes[i]] ? nodes[j++] : nodes[i++];
+                }
+                while (i < middle) {
+                    sortBuffer[k++] = nodes[i++];
+                }
+                while (j < high) {
+                    sortBuffer[k++] = nodes[j++];
+                }
+                System.arraycopy(sortBuffer, low, nodes, low, high - low);
+            }
+        }
+    }
+
+    private static int[][] copy(int[][] order) {
+        final int[][] copy = new int[order.length][];
+        for (int l = 0; l < order.length; l++) {
+            copy[l] = order[l].clone();
+        }
+        return copy;
+    }
+}
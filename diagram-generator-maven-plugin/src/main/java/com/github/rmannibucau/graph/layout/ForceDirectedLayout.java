@@ -0,0 +1,405 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.graph.transformer.VertexShapeTransformer;
+import com.github.rmannibucau.loader.spi.DiagramGeneratorRuntimeException;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import edu.uci.ics.jung.graph.Graph;
+import org.apache.commons.collections15.Transformer;
+
+import java.awt.Dimension;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Spring embedder (Fruchterman, Reingold) for the diagrams made of routes
+ * calling each other in cycles, where levels degenerate into a tower.
+ *
+ * Each iteration builds a {@link BarnesHutTree} so the repulsion costs
+ * O(n log n), edges attract their ends and a weak gravity keeps the
+ * disconnected parts together. Forces are computed by chunks of nodes,
+ * in parallel when an executor is set. The moves are capped by a
+ * temperature cooling at each iteration and the simulation stops when
+ * no node moves more than the convergence threshold (a fraction of the
+ * ideal edge length) or after the maximum number of iterations.
+ *
+ * The initial positions come from a seeded random on the nodes sorted by
+ * id and text so the same diagram always gets the same picture.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class ForceDirectedLayout extends AbstractLayout<Node, Edge> {
+    private static final int MIN_DISTANCE = 20; // nodes without shape are points
+    private static final int PARALLEL_THRESHOLD = 512; // smaller diagrams are computed by the caller
+    private static final int CHUNK_SIZE = 256;
+    private static final double THETA = 0.8;
+    private static final double GRAVITY = 0.05;
+    private static final double COOLING = 0.95;
+
+    public static final int DEFAULT_MAX_ITERATIONS = 300;
+    public static final double DEFAULT_CONVERGENCE = 0.01;
+    public static final long DEFAULT_SEED = 42;
+
+    private Transformer<Node, Shape> vertexShapeTransformer;
+    private VertexShapeTransformer geometry;
+    private boolean adjust;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private double convergence = DEFAULT_CONVERGENCE;
+    private long seed = DEFAULT_SEED;
+    private ExecutorService executor;
+    private long deadline;
+    private boolean timedOut;
+    private int iterations;
+    private final String name;
+
+    public ForceDirectedLayout(Diagram nodeEdgeGraph) {
+        super(nodeEdgeGraph);
+        name = nodeEdgeGraph.getName();
+    }
+
+    @Override public void initialize() {
+        timedOut = false;
+        iterations = 0;
+        final Node[] nodes = sortedNodes();
+        final int n = nodes.length;
+        if (n == 0) {
+            return;
+        }
+
+        int maxWidth = 0;
+        int maxHeight = 0;
+        for (Node node : nodes) {
+            maxWidth = Math.max(maxWidth, nodeWidth(node));
+            maxHeight = Math.max(maxHeight, nodeHeight(node));
+        }
+        final double k = Math.max(maxWidth, maxHeight) + MIN_DISTANCE; // ideal edge length
+
+        final Simulation simulation = new Simulation(graph, nodes, k);
+        final Random random = new Random(seed);
+        final double side = k * Math.sqrt(n);
+        for (int i = 0; i < n; i++) {
+            simulation.x[i] = random.nextDouble() * side;
+            simulation.y[i] = random.nextDouble() * side;
+        }
+
+        final List<Callable<Void>> chunks = chunks(simulation);
+        double temperature = side / 10;
+        while (iterations < maxIterations) {
+            iterations++;
+            simulation.tree.build(simulation.x, simulation.y, n);
+            if (chunks == null) {
+                simulation.forces(0, n);
+            } else {
+                computeInParallel(chunks);
+            }
+
+            if (simulation.move(temperature) < convergence * k) {
+                break;
+            }
+            temperature *= COOLING;
+            if (deadline > 0 && System.nanoTime() > deadline) {
+                timedOut = true;
+                break;
+            }
+        }
+
+        place(nodes, simulation, maxWidth, maxHeight);
+    }
+
+    @Override public void reset() {
+        initialize();
+    }
+
+    // moves the nodes in the canvas, growing it with adjust and shrinking the drawing otherwise
+    private void place(Node[] nodes, Simulation simulation, int maxWidth, int maxHeight) {
+        double left = Double.MAX_VALUE;
+        double top = Double.MAX_VALUE;
+        double right = -Double.MAX_VALUE;
+        double bottom = -Double.MAX_VALUE;
+        for (int i = 0; i < nodes.length; i++) {
+            left = Math.min(left, simulation.x[i]);
+            top = Math.min(top, simulation.y[i]);
+            right = Math.max(right, simulation.x[i]);
+            bottom = Math.max(bottom, simulation.y[i]);
+        }
+
+        final double width = right - left;
+        final double height = bottom - top;
+        double scale = 1;
+        if (adjust) { // setSize() would layout again
+            size = new Dimension(Math.max(getSize().width, (int) Math.ceil(width) + maxWidth),
+                    Math.max(getSize().height, (int) Math.ceil(height) + maxHeight));
+        } else {
+            if (width > 0) {
+                scale = Math.min(scale, Math.max(0, getSize().width - maxWidth) / width);
+            }
+            if (height > 0) {
+                scale = Math.min(scale, Math.max(0, getSize().height - maxHeight) / height);
+            }
+        }
+
+        // centered in the canvas
+        final double dx = (getSize().width - width * scale) / 2;
+        final double dy = (getSize().height - height * scale) / 2;
+        for (int i = 0; i < nodes.length; i++) {
+            setLocation(nodes[i], new Point2D.Double(
+                    dx + (simulation.x[i] - left) * scale,
+                    dy + (simulation.y[i] - top) * scale));
+        }
+    }
+
+    // nodes are iterated in hash order, sorting them keeps the seed meaningful between two runs
+    private Node[] sortedNodes() {
+        final Node[] nodes = graph.getVertices().toArray(new Node[graph.getVertexCount()]);
+        Arrays.sort(nodes, new Comparator<Node>() {
+            @Override public int compare(Node o1, Node o2) {
+                int result = compare(o1.getId(), o2.getId());
+                if (result == 0) {
+                    result = compare(o1.getText(), o2.getText());
+                }
+                if (result == 0) {
+                    result = graph.degree(o1) - graph.degree(o2);
+                }
+                return result;
+            }
+
+            private int compare(String s1, String s2) {
+                if (s1 == null) {
+                    return s2 == null ? 0 : -1;
+                }
+                return s2 == null ? 1 : s1.compareTo(s2);
+            }
+        });
+        return nodes;
+    }
+
+    private List<Callable<Void>> chunks(Simulation simulation) {
+        final int n = simulation.x.length;
+        if (executor == null || n < PARALLEL_THRESHOLD) {
+            return null;
+        }
+
+        final List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+        for (int start = 0; start < n; start += CHUNK_SIZE) {
+            chunks.add(new ForceChunk(simulation, start, Math.min(n, start + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    private void computeInParallel(List<Callable<Void>> chunks) {
+        try {
+            for (Future<Void> future : executor.invokeAll(chunks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DiagramGeneratorRuntimeException("interrupted while laying out " + name, e);
+        } catch (ExecutionException e) {
+            throw new DiagramGeneratorRuntimeException("can't layout diagram " + name, e.getCause());
+        }
+    }
+
+    private int nodeWidth(Node n) {
+        if (geometry != null) {
+            return geometry.getGeometry(n).getWidth();
+        }
+        if (vertexShapeTransformer == null) {
+            return 0;
+        }
+        return vertexShapeTransformer.transform(n).getBounds().width;
+    }
+
+    private int nodeHeight(Node n) {
+        if (geometry != null) {
+            return geometry.getGeometry(n).getHeight();
+        }
+        if (vertexShapeTransformer == null) {
+            return 0;
+        }
+        return vertexShapeTransformer.transform(n).getBounds().height;
+    }
+
+    public void setVertexShapeTransformer(Transformer<Node, Shape> vertexShapeTransformer) {
+        this.vertexShapeTransformer = vertexShapeTransformer;
+        if (vertexShapeTransformer instanceof VertexShapeTransformer) { // shared cache, no shape per call
+            geometry = (VertexShapeTransformer) vertexShapeTransformer;
+        } else {
+            geometry = null;
+        }
+    }
+
+    public void setIgnoreSize(boolean adjust) {
+        this.adjust = adjust;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * @param convergence the simulation stops when no node moves more than this fraction of an edge length.
+     */
+    public void setConvergence(double convergence) {
+        this.convergence = convergence;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param executor pool computing the forces of large diagrams, null to do everything in the caller thread.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param deadline {@link System#nanoTime()} after which the simulation stops where it is, 0 for none.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return true if the last layout hit its deadline.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return number of iterations of the last layout.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    // positions, forces and springs as arrays, a chunk only writes the forces of its own nodes
+    private static class Simulation {
+        private final double[] x;
+        private final double[] y;
+        private final double[] fx;
+        private final double[] fy;
+        private final int[] neighborStart;
+        private final int[] neighbors;
+        private final double k;
+        private final BarnesHutTree tree = new BarnesHutTree();
+
+        private Simulation(Graph<Node, Edge> graph, Node[] nodes, double k) {
+            this.k = k;
+            final int n = nodes.length;
+            x = new double[n];
+            y = new double[n];
+            fx = new double[n];
+            fy = new double[n];
+
+            final Map<Node, Integer> indices = new HashMap<Node, Integer>(n * 2);
+            for (int i = 0; i < n; i++) {
+                indices.put(nodes[i], i);
+            }
+
+            // springs in both directions, the orientation of the edges doesn't matter here
+            final int[] from = new int[2 * graph.getEdgeCount()];
+            final int[] to = new int[from.length];
+            int m = 0;
+            for (Edge edge : graph.getEdges()) {
+                final int s = indices.get(graph.getSource(edge));
+                final int d = indices.get(graph.getDest(edge));
+                if (s != d) { // self loops
+                    from[m] = s;
+                    to[m++] = d;
+                    from[m] = d;
+                    to[m++] = s;
+                }
+            }
+            neighborStart = new int[n + 1];
+            neighbors = new int[m];
+            LayeredGraph.fill(from, to, m, neighborStart, neighbors, null);
+            for (int i = 0; i < n; i++) { // edges come in hash order, sums have to be done in the same order
+                Arrays.sort(neighbors, neighborStart[i], neighborStart[i + 1]);
+            }
+        }
+
+        private void forces(int start, int end) {
+            final int[] stack = new int[tree.stackSize()];
+            final double[] repulsion = new double[2];
+            final double k2 = k * k;
+
+            for (int i = start; i < end; i++) {
+                tree.repulsion(i, THETA, k2, stack, repulsion);
+                double forceX = repulsion[0];
+                double forceY = repulsion[1];
+
+                for (int p = neighborStart[i]; p < neighborStart[i + 1]; p++) {
+                    final int j = neighbors[p];
+                    final double dx = x[j] - x[i];
+                    final double dy = y[j] - y[i];
+                    final double d = Math.sqrt(dx * dx + dy * dy);
+                    forceX += dx * d / k;
+                    forceY += dy * d / k;
+                }
+
+                fx[i] = forceX;
+                fy[i] = forceY;
+            }
+        }
+
+        // gravity to the center keeps the disconnected parts together, returns the largest move
+        private double move(double temperature) {
+            double centerX = 0;
+            double centerY = 0;
+            for (int i = 0; i < x.length; i++) {
+                centerX += x[i];
+                centerY += y[i];
+            }
+            centerX /= x.length;
+            centerY /= y.length;
+
+            double max = 0;
+            for (int i = 0; i < x.length; i++) {
+                final double forceX = fx[i] + GRAVITY * (centerX - x[i]);
+                final double forceY = fy[i] + GRAVITY * (centerY - y[i]);
+                final double length = Math.sqrt(forceX * forceX + forceY * forceY);
+                if (length == 0) {
+                    continue;
+                }
+                final double step = Math.min(length, temperature);
+                x[i] += forceX / length * step;
+                y[i] += forceY / length * step;
+                max = Math.max(max, step);
+            }
+            return max;
+        }
+    }
+
+    private static class ForceChunk implements Callable<Void> {
+        private final Simulation simulation;
+        private final int start;
+        private final int end;
+
+        private ForceChunk(Simulation simulation, int start, int end) {
+            this.simulation = simulation;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override public Void call() throws Exception {
+            simulation.forces(start, end);
+            return null;
+        }
+    }
+}
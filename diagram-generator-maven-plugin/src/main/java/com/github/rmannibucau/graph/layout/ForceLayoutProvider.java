@@ -0,0 +1,37 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+
+/**
+ * {@link ForceDirectedLayout}, stopped at the budget where it is. It is
+ * seeded so it doesn't need the layout cache to be stable.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class ForceLayoutProvider implements LayoutProvider {
+    @Override public AbstractLayout<Node, Edge> create(final Diagram diagram, final LayoutOptions options) {
+        final ForceDirectedLayout layout = configure(new ForceDirectedLayout(diagram), options);
+        if (layout.isTimedOut() && options.getLog() != null) {
+            options.getLog().warn("layout of " + diagram.getName() + " took more than " + options.getBudget()
+                    + "ms, stopped after " + layout.getIterations() + " iterations");
+        }
+        return layout;
+    }
+
+    @Override public String key() {
+        return "force";
+    }
+
+    // setSize() lays out so it comes last, once everything else is set
+    static <T extends ForceDirectedLayout> T configure(final T layout, final LayoutOptions options) {
+        layout.setVertexShapeTransformer(options.getVertexShapeTransformer());
+        layout.setIgnoreSize(options.isAdjust());
+        layout.setExecutor(options.getExecutor());
+        layout.setDeadline(options.deadline());
+        layout.setSize(options.getSize());
+        return layout;
+    }
+}
@@ -0,0 +1,234 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.graph.Graph;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Int indexed copy of a diagram used by the layout algorithms.
+ *
+ * Edges closing a cycle are reversed (found with a depth first search) so
+ * the adjacency is acyclic, then each node gets the level of the longest
+ * path reaching it. Both steps are O(V + E).
+ *
+ * @author Romain Manni-Bucau
+ */
+public class LayeredGraph {
+    private final Node[] nodes;
+    private final Map<Node, Integer> indices;
+
+    // compressed adjacency of the acyclic graph: successors of i are succ[succStart[i]..succStart[i + 1]]
+    final int[] succStart;
+    final int[] succ;
+    final int[] predStart;
+    final int[] pred;
+
+    final int[] level;
+    final int levelCount;
+    private final int reversedCount;
+
+    public LayeredGraph(Graph<Node, Edge> graph) {
+        this(graph, graph.getVertices());
+    }
+
+    /**
+     * @param component nodes to keep, edges leaving this set are ignored.
+     */
+    public LayeredGraph(Graph<Node, Edge> graph, Collection<Node> component) {
+        final int n = component.size();
+        nodes = new Node[n];
+        indices = new HashMap<Node, Integer>(n * 2);
+        int edges = 0;
+        for (Node node : component) {
+            indices.put(node, indices.size());
+            nodes[indices.size() - 1] = node;
+            edges += graph.outDegree(node);
+        }
+
+        // raw adjacency, self loops are useless for the layout
+        final int[] from = new int[edges];
+        final int[] to = new int[from.length];
+        int m = 0;
+        for (Node node : component) {
+            final int s = indices.get(node);
+            for (Edge edge : graph.getOutEdges(node)) {
+                final Integer d = indices.get(graph.getDest(edge));
+                if (d != null && s != d) {
+                    from[m] = s;
+                    to[m] = d;
+                    m++;
+                }
+            }
+        }
+
+        final int[] outStart = new int[n + 1];
+        final int[] out = new int[m];
+        final int[] outEdge = new int[m];
+        fill(from, to, m, outStart, out, outEdge);
+
+        final boolean[] reversed = backEdges(n, outStart, out, outEdge, m, to);
+        int reversedEdges = 0;
+        for (int e = 0; e < m; e++) {
+            if (reversed[e]) {
+                reversedEdges++;
+                final int tmp = from[e];
+                from[e] = to[e];
+                to[e] = tmp;
+            }
+        }
+
+        reversedCount = reversedEdges;
+
+        succStart = new int[n + 1];
+        succ = new int[m];
+        fill(from, to, m, succStart, succ, null);
+        predStart = new int[n + 1];
+        pred = new int[m];
+        fill(to, from, m, predStart, pred, null);
+
+        level = new int[n];
+        levelCount = longestPath();
+    }
+
+    // counting sort of the edges by source, edges (optional) keeps the index of the sorted edges
+    static void fill(int[] from, int[] to, int m, int[] start, int[] adjacency, int[] edges) {
+        final int n = start.length - 1;
+        for (int e = 0; e < m; e++) {
+            start[from[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+
+        final int[] cursor = Arrays.copyOf(start, n);
+        for (int e = 0; e < m; e++) {
+            final int position = cursor[from[e]]++;
+            adjacency[position] = to[e];
+            if (edges != null) {
+                edges[position] = e;
+            }
+        }
+    }
+
+    /**
+     * Iterative depth first search, an edge to a node still on the stack closes a cycle.
+     * Sources are visited first to keep the entry points of the routes on top.
+     */
+    private static boolean[] backEdges(int n, int[] outStart, int[] out, int[] outEdge, int m, int[] to) {
+        final boolean[] reversed = new boolean[m];
+        final byte[] state = new byte[n]; // 0 = new, 1 = on stack, 2 = done
+        final int[] stack = new int[n];
+        final int[] cursor = new int[n];
+
+        final boolean[] hasPredecessor = new boolean[n];
+        for (int e = 0; e < m; e++) {
+            hasPredecessor[to[e]] = true;
+        }
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int root = 0; root < n; root++) {
+                if (state[root] != 0 || (pass == 0 && hasPredecessor[root])) {
+                    continue;
+                }
+
+                int top = 0;
+                stack[0] = root;
+                state[root] = 1;
+                cursor[root] = outStart[root];
+                while (top >= 0) {
+                    final int v = stack[top];
+                    if (cursor[v] < outStart[v + 1]) {
+                        final int position = cursor[v]++;
+                        final int w = out[position];
+                        if (state[w] == 0) {
+                            state[w] = 1;
+                            cursor[w] = outStart[w];
+                            stack[++top] = w;
+                        } else if (state[w] == 1) {
+                            reversed[outEdge[position]] = true;
+                        }
+                    } else {
+                        state[v] = 2;
+                        top--;
+                    }
+                }
+            }
+        }
+        return reversed;
+    }
+
+    // topological order (Kahn) propagating level(successor) = max(level(node) + 1)
+    private int longestPath() {
+        final int n = nodes.length;
+        final int[] remaining = new int[n];
+        final int[] queue = new int[n];
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            remaining[i] = predStart[i + 1] - predStart[i];
+            if (remaining[i] == 0) {
+                queue[tail++] = i;
+            }
+        }
+
+        int max = -1;
+        for (int head = 0; head < tail; head++) {
+            final int v = queue[head];
+            max = Math.max(max, level[v]);
+            for (int p = succStart[v]; p < succStart[v + 1]; p++) {
+                final int w = succ[p];
+                level[w] = Math.max(level[w], level[v] + 1);
+                if (--remaining[w] == 0) {
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return max + 1;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public Node node(int index) {
+        return nodes[index];
+    }
+
+    public int index(Node node) {
+        return indices.get(node);
+    }
+
+    public int level(int index) {
+        return level[index];
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @return the number of edges reversed to break the cycles.
+     */
+    public int getReversedCount() {
+        return reversedCount;
+    }
+
+    /**
+     * @return the number of edges, self loops excluded.
+     */
+    public int getEdgeCount() {
+        return succ.length;
+    }
+
+    public int[] successors(int index) {
+        return Arrays.copyOfRange(succ, succStart[index], succStart[index + 1]);
+    }
+
+    public int[] predecessors(int index) {
+        return Arrays.copyOfRange(pred, predStart[index], predStart[index + 1]);
+    }
+}
@@ -0,0 +1,323 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.incremental.Fingerprint;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.graph.Graph;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Levels, orders and coordinates of the last layout of a diagram, stored
+ * in the output directory and keyed by the node ids given by the loader.
+ *
+ * A level whose nodes are all known with the same level keeps its
+ * previous order, only the levels where nodes appeared or moved are
+ * reordered, starting from the previous order of the moved nodes. When nothing changed (same nodes with the same boxes, same
+ * edges) the coordinates are reused as they are, without ordering again.
+ *
+ * Nodes without id are always laid out as new nodes.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class LayoutCache {
+    public static final String DIRECTORY = ".layout";
+
+    private static final String SIZE_KEY = "@size";
+    private static final String EDGES_KEY = "@edges";
+    private static final String FORMAT_KEY = "@format";
+    private static final String FORMAT = "2"; // slots with the node boxes, older files are ignored
+    private static final String VIRTUAL_SEPARATOR = "->";
+
+    private final File file;
+    private final Map<String, Slot> previous;
+    private final Map<String, Slot> current = new HashMap<String, Slot>();
+    private final String previousSize;
+    private final String previousEdges;
+    private String currentSize;
+    private String currentEdges;
+
+    private LayoutCache(File file, Map<String, Slot> previous, String previousSize, String previousEdges) {
+        this.file = file;
+        this.previous = previous;
+        this.previousSize = previousSize;
+        this.previousEdges = previousEdges;
+    }
+
+    public static LayoutCache load(File output, String diagram) throws IOException {
+        final File file = new File(new File(output, DIRECTORY), diagram + ".properties");
+        final Properties properties = new Properties();
+        if (file.isFile()) {
+            final InputStream is = new FileInputStream(file);
+            try {
+                properties.load(is);
+            } finally {
+                is.close();
+            }
+        }
+
+        final Map<String, Slot> slots = new HashMap<String, Slot>();
+        if (!FORMAT.equals(properties.getProperty(FORMAT_KEY))) {
+            return new LayoutCache(file, slots, null, null);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith("@")) {
+                final Slot slot = Slot.parse(properties.getProperty(key));
+                if (slot != null) {
+                    slots.put(key, slot);
+                }
+            }
+        }
+        return new LayoutCache(file, slots, properties.getProperty(SIZE_KEY), properties.getProperty(EDGES_KEY));
+    }
+
+    /**
+     * Sorts each level by the previous levels and positions (new nodes last),
+     * a node moved to another level by an inserted node keeps its order with
+     * the nodes it moved with. The levels which didn't change are frozen.
+     */
+    synchronized void seed(LevelOrder order, CrossingMinimizer minimizer) {
+        for (int l = 0; l < order.getLevelCount(); l++) {
+            final int[] nodes = order.level(l);
+            final Slot[] slots = new Slot[nodes.length];
+            final Integer[] indices = new Integer[nodes.length];
+            boolean unchanged = true;
+            for (int i = 0; i < nodes.length; i++) {
+                slots[i] = previous(order, nodes[i]);
+                indices[i] = i;
+                unchanged &= slots[i] != null && slots[i].level == l;
+            }
+
+            Arrays.sort(indices, new Comparator<Integer>() {
+                @Override public int compare(Integer a, Integer b) {
+                    final Slot sa = slots[a];
+                    final Slot sb = slots[b];
+                    if (sa == null || sb == null) {
+                        return sa != null ? -1 : (sb != null ? 1 : a.compareTo(b));
+                    }
+                    if (sa.level != sb.level) {
+                        return sa.level < sb.level ? -1 : 1;
+                    }
+                    return sa.position != sb.position ? (sa.position < sb.position ? -1 : 1) : a.compareTo(b);
+                }
+            });
+            final int[] sorted = new int[nodes.length];
+            for (int i = 0; i < indices.length; i++) {
+                sorted[i] = nodes[indices[i]];
+            }
+            order.setLevel(l, sorted);
+            if (unchanged) {
+                minimizer.freeze(l);
+            }
+        }
+    }
+
+    synchronized void ordered(LevelOrder order) {
+        for (int l = 0; l < order.getLevelCount(); l++) {
+            final int[] nodes = order.level(l);
+            for (int i = 0; i < nodes.length; i++) {
+                final String key = key(order, nodes[i]);
+                if (key != null) {
+                    final Slot slot = new Slot(l, i);
+                    if (!order.isVirtual(nodes[i])) {
+                        slot.text = text(order.graph.node(nodes[i]));
+                    }
+                    current.put(key, slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the previous coordinates if the nodes (with their text and box) and the edges
+     * didn't change, it is checked before ordering the levels which is the expensive part.
+     *
+     * @param request requested size and options of the layout.
+     * @return the previous layout size or null if the layout has to be ordered and placed again.
+     */
+    synchronized Dimension restore(LevelLayout layout, Graph<Node, Edge> graph, String request) {
+        currentEdges = edges(graph);
+        if (previousSize == null || !previousSize.startsWith(request + ",") || currentEdges == null
+                || !currentEdges.equals(previousEdges) || graph.getVertexCount() != countNodes(previous)) {
+            return null;
+        }
+
+        for (Node node : graph.getVertices()) {
+            final Slot before = previous.get(node.getId());
+            if (before == null || before.location == null || !text(node).equals(before.text)
+                    || before.width != layout.nodeWidth(node) || before.height != layout.nodeHeight(node)) {
+                return null;
+            }
+        }
+        for (Node node : graph.getVertices()) {
+            layout.setLocation(node, previous.get(node.getId()).location);
+        }
+
+        current.putAll(previous); // virtual nodes too, they seed the next partial change
+        currentSize = previousSize;
+        final String[] size = previousSize.substring(request.length() + 1).split(",");
+        return new Dimension(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+    }
+
+    synchronized void placed(Node node, Point2D location, int width, int height) {
+        if (node.getId() != null && current.containsKey(node.getId())) {
+            final Slot slot = current.get(node.getId());
+            slot.location = new Point2D.Double(location.getX(), location.getY());
+            slot.width = width;
+            slot.height = height;
+        }
+    }
+
+    synchronized void sized(String request, Dimension size) {
+        currentSize = request + "," + size.width + "," + size.height;
+    }
+
+    public synchronized void save() throws IOException {
+        final Properties properties = new Properties();
+        for (Map.Entry<String, Slot> entry : current.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        if (currentSize != null) {
+            properties.setProperty(SIZE_KEY, currentSize);
+        }
+        if (currentEdges != null) {
+            properties.setProperty(EDGES_KEY, currentEdges);
+        }
+        properties.setProperty(FORMAT_KEY, FORMAT);
+
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("can't create " + file.getParentFile());
+        }
+        final OutputStream os = new FileOutputStream(file);
+        try {
+            properties.store(os, "diagram-generator layout");
+        } finally {
+            os.close();
+        }
+    }
+
+    private Slot previous(LevelOrder order, int node) {
+        final String key = key(order, node);
+        if (key == null) {
+            return null;
+        }
+
+        final Slot slot = previous.get(key);
+        if (slot != null && !order.isVirtual(node) && !text(order.graph.node(node)).equals(slot.text)) {
+            return null;
+        }
+        return slot;
+    }
+
+    // real nodes by id, virtual ones by the ids of their edge and their level
+    private static String key(LevelOrder order, int node) {
+        if (!order.isVirtual(node)) {
+            return order.graph.node(node).getId();
+        }
+
+        final int virtual = node - order.graph.size();
+        final String source = order.graph.node(order.virtualSource[virtual]).getId();
+        final String target = order.graph.node(order.virtualTarget[virtual]).getId();
+        if (source == null || target == null) {
+            return null;
+        }
+        return source + VIRTUAL_SEPARATOR + target + "@" + order.level[node];
+    }
+
+    // null when a node has no id, the layout can't be matched then
+    private static String edges(Graph<Node, Edge> graph) {
+        final List<String> edges = new ArrayList<String>(graph.getEdgeCount());
+        for (Node node : graph.getVertices()) {
+            if (node.getId() == null) {
+                return null;
+            }
+        }
+        for (Edge edge : graph.getEdges()) {
+            edges.add(graph.getSource(edge).getId() + VIRTUAL_SEPARATOR + graph.getDest(edge).getId());
+        }
+        Collections.sort(edges);
+
+        final Fingerprint fingerprint = new Fingerprint();
+        for (String edge : edges) {
+            fingerprint.add(edge);
+        }
+        return fingerprint.value();
+    }
+
+    private static String text(Node node) {
+        return node.getText() == null ? "" : node.getText();
+    }
+
+    private static int countNodes(Map<String, Slot> slots) {
+        int count = 0;
+        for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+            if (!entry.getKey().contains(VIRTUAL_SEPARATOR)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // level,position for virtual nodes, level,position,x,y,width,height,text for real ones (x and y empty until placed)
+    private static class Slot {
+        private final int level;
+        private final int position;
+        private Point2D location;
+        private int width;
+        private int height;
+        private String text;
+
+        private Slot(int level, int position) {
+            this.level = level;
+            this.position = position;
+        }
+
+        private static Slot parse(String value) {
+            final String[] parts = value.split(",", 7); // the text is last since it can contain commas
+            try {
+                final Slot slot = new Slot(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                if (parts.length == 7) {
+                    if (!parts[2].isEmpty()) {
+                        slot.location = new Point2D.Double(Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+                        slot.width = Integer.parseInt(parts[4]);
+                        slot.height = Integer.parseInt(parts[5]);
+                    }
+                    slot.text = parts[6];
+                }
+                return slot;
+            } catch (RuntimeException e) { // corrupted entry, the node is laid out again
+                return null;
+            }
+        }
+
+        @Override public String toString() {
+            final StringBuilder builder = new StringBuilder().append(level).append(',').append(position);
+            if (text != null) {
+                builder.append(',');
+                if (location != null) {
+                    builder.append(location.getX()).append(',').append(location.getY())
+                            .append(',').append(width).append(',').append(height);
+                } else {
+                    builder.append(",,,");
+                }
+                builder.append(',').append(text);
+            }
+            return builder.toString();
+        }
+    }
+}
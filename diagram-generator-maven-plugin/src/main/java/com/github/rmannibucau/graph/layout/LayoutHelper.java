@@ -0,0 +1,27 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.DiagramGeneratorRuntimeException;
+
+import java.util.ServiceLoader;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public final class LayoutHelper {
+    private LayoutHelper() {
+        // no-op
+    }
+
+    public static LayoutProvider getProvider(final String key) {
+        return getProvider(key, Thread.currentThread().getContextClassLoader());
+    }
+
+    public static LayoutProvider getProvider(final String key, final ClassLoader classLoader) {
+        for (final LayoutProvider provider : ServiceLoader.load(LayoutProvider.class, classLoader)) {
+            if (key.equals(provider.key())) {
+                return provider;
+            }
+        }
+        throw new DiagramGeneratorRuntimeException("no layout found for key " + key, null);
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.graph.Node;
+import org.apache.commons.collections15.Transformer;
+import org.apache.maven.plugin.logging.Log;
+
+import java.awt.Dimension;
+import java.awt.Shape;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * What a {@link LayoutProvider} gets from the renderer and the configuration,
+ * providers ignore the options they don't support.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class LayoutOptions {
+    public static final int DEFAULT_MAX_NODES = 2000;
+    public static final int DEFAULT_MAX_EDGES = 5000;
+    public static final double DEFAULT_MAX_CYCLE_DENSITY = 0.3;
+    public static final long DEFAULT_BUDGET = 10000;
+
+    private Dimension size;
+    private Transformer<Node, Shape> vertexShapeTransformer;
+    private boolean adjust;
+    private int crossingSweeps = LevelLayout.DEFAULT_CROSSING_SWEEPS;
+    private ExecutorService executor;
+    private LayoutCache cache;
+    private Log log;
+
+    private int maxNodes = DEFAULT_MAX_NODES;
+    private int maxEdges = DEFAULT_MAX_EDGES;
+    private double maxCycleDensity = DEFAULT_MAX_CYCLE_DENSITY;
+    private long budget = DEFAULT_BUDGET;
+
+    public Dimension getSize() {
+        return size;
+    }
+
+    public void setSize(Dimension size) {
+        this.size = size;
+    }
+
+    public Transformer<Node, Shape> getVertexShapeTransformer() {
+        return vertexShapeTransformer;
+    }
+
+    public void setVertexShapeTransformer(Transformer<Node, Shape> vertexShapeTransformer) {
+        this.vertexShapeTransformer = vertexShapeTransformer;
+    }
+
+    /**
+     * @return true if the canvas can grow to the size the layout needs.
+     */
+    public boolean isAdjust() {
+        return adjust;
+    }
+
+    public void setAdjust(boolean adjust) {
+        this.adjust = adjust;
+    }
+
+    public int getCrossingSweeps() {
+        return crossingSweeps;
+    }
+
+    public void setCrossingSweeps(int crossingSweeps) {
+        this.crossingSweeps = crossingSweeps;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public LayoutCache getCache() {
+        return cache;
+    }
+
+    public void setCache(LayoutCache cache) {
+        this.cache = cache;
+    }
+
+    public Log getLog() {
+        return log;
+    }
+
+    public void setLog(Log log) {
+        this.log = log;
+    }
+
+    /**
+     * @return above this number of nodes the automatic selection uses a linear layout.
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @return above this number of edges the automatic selection uses a linear layout.
+     */
+    public int getMaxEdges() {
+        return maxEdges;
+    }
+
+    public void setMaxEdges(int maxEdges) {
+        this.maxEdges = maxEdges;
+    }
+
+    /**
+     * @return above this ratio of edges closing a cycle the automatic selection doesn't use levels.
+     */
+    public double getMaxCycleDensity() {
+        return maxCycleDensity;
+    }
+
+    public void setMaxCycleDensity(double maxCycleDensity) {
+        this.maxCycleDensity = maxCycleDensity;
+    }
+
+    /**
+     * @return time in milliseconds the expensive phases of a layout can take, 0 for no limit.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} deadline for a layout starting now, 0 if there is none.
+     */
+    public long deadline() {
+        if (budget <= 0) {
+            return 0;
+        }
+        return System.nanoTime() + budget * 1000000L;
+    }
+}
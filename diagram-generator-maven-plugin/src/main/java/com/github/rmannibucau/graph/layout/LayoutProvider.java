@@ -0,0 +1,20 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+
+/**
+ * A layout algorithm, found with {@link java.util.ServiceLoader} and
+ * selected by its key (diagram.layout parameter).
+ *
+ * @author Romain Manni-Bucau
+ */
+public interface LayoutProvider {
+    /**
+     * @return the laid out diagram, size included, it must not be an iterative layout.
+     */
+    AbstractLayout<Node, Edge> create(Diagram diagram, LayoutOptions options);
+    String key();
+}
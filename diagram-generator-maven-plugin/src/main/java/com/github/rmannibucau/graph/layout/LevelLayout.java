@@ -1,6 +1,7 @@
 package com.github.rmannibucau.graph.layout;
 
-import com.github.rmannibucau.graph.layout.comparator.NodeComparator;
+import com.github.rmannibucau.graph.transformer.VertexShapeTransformer;
+import com.github.rmannibucau.loader.spi.DiagramGeneratorRuntimeException;
 import com.github.rmannibucau.loader.spi.graph.Diagram;
 import com.github.rmannibucau.loader.spi.graph.Edge;
 import com.github.rmannibucau.loader.spi.graph.Node;
@@ -9,161 +10,267 @@ import org.apache.commons.collections15.Transformer;
 
 import java.awt.Dimension;
 import java.awt.Point;
-import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
+ * Disconnected parts of the diagram (typically independent routes) are
+ * ordered separately, in parallel when an executor is set, then packed
+ * in shelves.
+ *
+ * Nodes are aligned with their neighbors and packed to the left by a
+ * {@link CoordinateAssigner}, levels are separated by a node height.
+ * With adjust the canvas grows to the packed size, otherwise levels get
+ * closer to fit the requested height and the content is centered.
+ *
+ * With a {@link LayoutCache} the previous order of the unchanged levels
+ * is kept so regenerated pictures only move where the diagram changed.
+ *
  * @author Romain Manni-Bucau
  */
 public class LevelLayout extends AbstractLayout<Node, Edge> {
-    private static final int X_MARGIN = 4;
+    private static final int COMPONENT_GAP = 20;
+    private static final int MIN_LEVEL_SPACE = 20; // nodes without shape are points
+    private static final int PARALLEL_THRESHOLD = 64; // smaller components are ordered by the caller
+
+    public static final int DEFAULT_CROSSING_SWEEPS = 8;
 
     private Transformer<Node, Shape> vertexShapeTransformer;
+    private VertexShapeTransformer geometry;
     private boolean adjust;
+    private int crossingSweeps = DEFAULT_CROSSING_SWEEPS;
+    private ExecutorService executor;
+    private LayoutCache cache;
+    private long deadline;
+    private volatile boolean timedOut;
+    private final String name;
 
     public LevelLayout(Diagram nodeEdgeGraph) {
         super(nodeEdgeGraph);
+        name = nodeEdgeGraph.getName();
     }
 
     @Override public void initialize() {
-        Map<Node, Integer> level = levels();
-        List<List<Node>> nodes = sortNodeByLevel(level);
-        int ySpace = maxHeight(nodes);
-        int nLevels = nodes.size();
-        int yLevel = Math.max(0, getSize().height - nLevels * ySpace) / Math.max(1, nLevels - 1);
-
-        int y = ySpace / 2;
-        int maxWidth = getSize().width;
-        for (List<Node> currentNodes : nodes) {
-            if (currentNodes.size() == 1) { // only 1 => centering manually
-                setLocation(currentNodes.iterator().next(), new Point(getSize().width / 2, y));
-            } else {
-                int x = 0;
-                int xLevel = Math.max(0, getSize().width - width(currentNodes) - X_MARGIN) / (currentNodes.size() - 1);
-                Collections.sort(currentNodes, new NodeComparator((Diagram) graph, locations));
-
-                for (Node node : currentNodes) {
-                    Rectangle b = getBound(node, vertexShapeTransformer);
-                    int step = b.getBounds().width / 2;
-                    x += step;
-                    setLocation(node, new Point(x, y));
-                    x += xLevel + step;
+        timedOut = false;
+        final String request = getSize().width + "," + getSize().height + "," + adjust;
+        if (cache != null) { // before ordering, nothing to compute when the diagram didn't change
+            final Dimension restored = cache.restore(this, graph, request);
+            if (restored != null) {
+                if (adjust) {
+                    size = restored;
                 }
+                return;
+            }
+        }
+        final List<LevelOrder> components = sortComponents(ConnectedComponents.weak(graph));
 
-                maxWidth = Math.max(maxWidth, x - xLevel);
+        // compact components packed in the canvas width, the final size is known in one pass
+        final int ySpace = Math.max(MIN_LEVEL_SPACE, maxHeight());
+        final int levelGap = levelGap(components, ySpace);
+        final double[][] xs = new double[components.size()][];
+        final Dimension[] boxes = new Dimension[components.size()];
+        for (int i = 0; i < boxes.length; i++) {
+            final LevelOrder order = components.get(i);
+            final CoordinateAssigner assigner = new CoordinateAssigner(order, widths(order), ySpace / 2.);
+            xs[i] = assigner.assign();
+            boxes[i] = new Dimension((int) Math.ceil(assigner.getWidth()),
+                    Math.max(0, order.getLevelCount() * (ySpace + levelGap) - levelGap));
+        }
+
+        final ShelfPacker packer = new ShelfPacker(getSize().width, COMPONENT_GAP);
+        final Point[] positions = packer.pack(boxes);
+        if (adjust) { // setSize() would layout again
+            size = new Dimension(Math.max(getSize().width, packer.getWidth()), Math.max(getSize().height, packer.getHeight()));
+        }
+
+        // centered when smaller than the canvas
+        final int dx = Math.max(0, (getSize().width - packer.getWidth()) / 2);
+        final int dy = Math.max(0, (getSize().height - packer.getHeight()) / 2);
+        for (int i = 0; i < boxes.length; i++) {
+            final LevelOrder order = components.get(i);
+            for (int v = 0; v < order.graph.size(); v++) {
+                setLocation(order.graph.node(v), new Point2D.Double(
+                        dx + positions[i].x + xs[i][v],
+                        dy + positions[i].y + ySpace / 2 + (ySpace + levelGap) * order.level[v]));
+            }
+        }
+
+        if (cache != null) {
+            for (Node node : graph.getVertices()) {
+                cache.placed(node, transform(node), nodeWidth(node), nodeHeight(node));
             }
-            y += yLevel + ySpace;
+            cache.sized(request, getSize());
         }
+    }
 
+    // a node height between levels, less if the canvas can't grow and is too small
+    private int levelGap(List<LevelOrder> components, int ySpace) {
         if (adjust) {
-            setIgnoreSize(false);
-            setSize(new Dimension(maxWidth, y + ySpace));
-            initialize();
-            setIgnoreSize(true);
+            return ySpace;
         }
+
+        int levels = 0;
+        for (LevelOrder order : components) {
+            levels = Math.max(levels, order.getLevelCount());
+        }
+        if (levels < 2) {
+            return ySpace;
+        }
+        return Math.max(0, Math.min(ySpace, (getSize().height - levels * ySpace) / (levels - 1)));
     }
 
     @Override public void reset() {
         initialize();
     }
 
-    private int width(List<Node> nodes) {
-        int sum = 0;
-        for (Node node : nodes) {
-            sum += getBound(node, vertexShapeTransformer).width;
+    // virtual nodes are points
+    private double[] widths(LevelOrder order) {
+        final double[] widths = new double[order.size];
+        for (int v = 0; v < order.graph.size(); v++) {
+            widths[v] = nodeWidth(order.graph.node(v));
         }
-        return sum;
+        return widths;
     }
 
-    private int maxHeight(List<List<Node>> nodes) {
+    private int maxHeight() {
         int max = 0;
-        for (List<Node> list : nodes) {
-            for (Node n : list) {
-                max = Math.max(max, getBound(n, vertexShapeTransformer).height);
-            }
+        for (Node n : graph.getVertices()) {
+            max = Math.max(max, nodeHeight(n));
         }
         return max;
     }
 
-    private Rectangle getBound(Node n, Transformer<Node, Shape> vst) {
-        if (vst == null) {
-            return new Rectangle(0, 0);
+    int nodeWidth(Node n) {
+        if (geometry != null) {
+            return geometry.getGeometry(n).getWidth();
         }
-        return vst.transform(n).getBounds();
+        if (vertexShapeTransformer == null) {
+            return 0;
+        }
+        return vertexShapeTransformer.transform(n).getBounds().width;
     }
 
-    private List<List<Node>> sortNodeByLevel(Map<Node, Integer> level) {
-        int levels = max(level);
-
-        List<List<Node>> sorted = new ArrayList<List<Node>>();
-        for (int i = 0; i < levels; i++) {
-            sorted.add(new ArrayList<Node>());
+    int nodeHeight(Node n) {
+        if (geometry != null) {
+            return geometry.getGeometry(n).getHeight();
         }
-
-        for (Map.Entry<Node, Integer> entry : level.entrySet()) {
-            sorted.get(entry.getValue()).add(entry.getKey());
+        if (vertexShapeTransformer == null) {
+            return 0;
         }
-        return sorted;
+        return vertexShapeTransformer.transform(n).getBounds().height;
     }
 
-    private int max(Map<Node, Integer> level) {
-        int i = 0;
-        for (Map.Entry<Node, Integer> l : level.entrySet()) {
-            if (l.getValue() >= i) {
-                i = l.getValue() + 1;
+    private List<LevelOrder> sortComponents(List<List<Node>> components) {
+        final List<Future<LevelOrder>> futures = new ArrayList<Future<LevelOrder>>(components.size());
+        for (List<Node> component : components) {
+            if (executor == null || components.size() == 1 || component.size() < PARALLEL_THRESHOLD) {
+                futures.add(null);
+            } else {
+                futures.add(executor.submit(new ComponentSort(this, component)));
             }
         }
-        return i;
-    }
-
-    private Map<Node, Integer> levels() {
-        Map<Node, Integer> out = new HashMap<Node, Integer>();
-        for (Node node : graph.getVertices()) { // init
-            out.put(node, 0);
-        }
-
-        Map<Node, Collection<Node>> successors = new HashMap<Node, Collection<Node>>();
-        Map<Node, Collection<Node>> predecessors = new HashMap<Node, Collection<Node>>();
-        for (Node node : graph.getVertices()) {
-            successors.put(node, graph.getSuccessors(node));
-            predecessors.put(node, graph.getPredecessors(node));
-        }
 
-        boolean done;
-        do {
-            done = true;
-            for (Node node : graph.getVertices()) {
-                int nodeLevel = out.get(node);
-                for (Node successor : successors.get(node)) {
-                    if (out.get(successor) <= nodeLevel
-                            && successor != node
-                            && !predecessors.get(node).contains(successor)) {
-                        done = false;
-                        out.put(successor, nodeLevel + 1);
-                    }
-                }
+        final List<LevelOrder> sorted = new ArrayList<LevelOrder>(components.size());
+        for (int i = 0; i < components.size(); i++) {
+            final Future<LevelOrder> future = futures.get(i);
+            if (future == null) {
+                sorted.add(sortNodeByLevel(components.get(i)));
+                continue;
             }
-        } while (!done);
 
-        int min = Collections.min(out.values());
-        for (Map.Entry<Node, Integer> entry : out.entrySet()) {
-            out.put(entry.getKey(), entry.getValue() - min);
+            try {
+                sorted.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DiagramGeneratorRuntimeException("interrupted while laying out " + name, e);
+            } catch (ExecutionException e) {
+                throw new DiagramGeneratorRuntimeException("can't layout diagram " + name, e.getCause());
+            }
         }
+        return sorted;
+    }
 
-        return out;
+    // only touches its own component so it can run concurrently, measuring nodes stays in the caller thread
+    private LevelOrder sortNodeByLevel(List<Node> component) {
+        final LevelOrder order = new LevelOrder(new LayeredGraph(graph, component));
+        final CrossingMinimizer minimizer = new CrossingMinimizer(order);
+        minimizer.setDeadline(deadline);
+        if (cache != null) {
+            cache.seed(order, minimizer);
+        }
+        minimizer.minimize(crossingSweeps);
+        if (minimizer.isTimedOut()) {
+            timedOut = true;
+        }
+        if (cache != null) {
+            cache.ordered(order);
+        }
+        return order;
     }
 
     public void setVertexShapeTransformer(Transformer<Node, Shape> vertexShapeTransformer) {
         this.vertexShapeTransformer = vertexShapeTransformer;
+        if (vertexShapeTransformer instanceof VertexShapeTransformer) { // shared cache, no shape per call
+            geometry = (VertexShapeTransformer) vertexShapeTransformer;
+        } else {
+            geometry = null;
+        }
+    }
+
+    public void setCrossingSweeps(int crossingSweeps) {
+        this.crossingSweeps = crossingSweeps;
     }
 
     public void setIgnoreSize(boolean adjust) {
         this.adjust = adjust;
     }
+
+    /**
+     * @param executor pool ordering the large components, null to do everything in the caller thread.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param deadline {@link System#nanoTime()} after which the crossing reduction stops and keeps
+     *                 the best order found so far, 0 for none.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return true if the last layout hit its deadline.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @param cache previous layout of the diagram, null to always start from scratch.
+     */
+    public void setCache(LayoutCache cache) {
+        this.cache = cache;
+    }
+
+    private static class ComponentSort implements Callable<LevelOrder> {
+        private final LevelLayout layout;
+        private final List<Node> component;
+
+        private ComponentSort(LevelLayout layout, List<Node> component) {
+            this.layout = layout;
+            this.component = component;
+        }
+
+        @Override public LevelOrder call() throws Exception {
+            return layout.sortNodeByLevel(component);
+        }
+    }
 }
@@ -0,0 +1,43 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+
+/**
+ * {@link LevelLayout} with the configured crossing reduction, stopped
+ * at the budget keeping the best order found.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class LevelLayoutProvider implements LayoutProvider {
+    @Override public AbstractLayout<Node, Edge> create(final Diagram diagram, final LayoutOptions options) {
+        final LevelLayout layout = layout(diagram, options, options.getCrossingSweeps());
+        if (layout.isTimedOut() && options.getLog() != null) {
+            options.getLog().warn("layout of " + diagram.getName() + " took more than " + options.getBudget()
+                    + "ms, crossing reduction stopped before the end");
+        }
+        return layout;
+    }
+
+    @Override public String key() {
+        return "level";
+    }
+
+    static LevelLayout layout(final Diagram diagram, final LayoutOptions options, final int crossingSweeps) {
+        return configure(new LevelLayout(diagram), options, crossingSweeps);
+    }
+
+    // setSize() lays out so it comes last, once everything else is set
+    static <T extends LevelLayout> T configure(final T layout, final LayoutOptions options, final int crossingSweeps) {
+        layout.setVertexShapeTransformer(options.getVertexShapeTransformer());
+        layout.setIgnoreSize(options.isAdjust());
+        layout.setCrossingSweeps(crossingSweeps);
+        layout.setExecutor(options.getExecutor());
+        layout.setCache(options.getCache());
+        layout.setDeadline(options.deadline());
+        layout.setSize(options.getSize());
+        return layout;
+    }
+}
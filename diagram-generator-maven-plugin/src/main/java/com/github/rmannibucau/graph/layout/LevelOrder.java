@@ -0,0 +1,116 @@
+package com.github.rmannibucau.graph.layout;
+
+import java.util.Arrays;
+
+/**
+ * Order of the nodes inside each level of a {@link LayeredGraph}.
+ *
+ * Edges spanning several levels are split with virtual nodes (indices
+ * greater or equal to the graph size) so every edge links two adjacent
+ * levels, which is what the ordering and placement algorithms expect.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class LevelOrder {
+    final LayeredGraph graph;
+    final int size; // real + virtual nodes
+    final int[] level;
+
+    // real endpoints of the edge a virtual node v belongs to, at v - graph.size()
+    final int[] virtualSource;
+    final int[] virtualTarget;
+
+    final int[][] order;
+    final int[] position;
+
+    // neighbors in the previous level: up[upStart[v]..upStart[v + 1]], same for the next level
+    final int[] upStart;
+    final int[] up;
+    final int[] downStart;
+    final int[] down;
+
+    public LevelOrder(LayeredGraph layered) {
+        graph = layered;
+
+        final int n = layered.size();
+        int virtual = 0;
+        for (int v = 0; v < n; v++) {
+            for (int p = layered.succStart[v]; p < layered.succStart[v + 1]; p++) {
+                virtual += layered.level[layered.succ[p]] - layered.level[v] - 1;
+            }
+        }
+
+        size = n + virtual;
+        level = Arrays.copyOf(layered.level, size);
+        virtualSource = new int[virtual];
+        virtualTarget = new int[virtual];
+
+        // segments of the proper graph, a long edge becomes a chain of virtual nodes
+        final int segments = layered.succ.length + virtual;
+        final int[] from = new int[segments];
+        final int[] to = new int[segments];
+        int m = 0;
+        int next = n;
+        for (int v = 0; v < n; v++) {
+            for (int p = layered.succStart[v]; p < layered.succStart[v + 1]; p++) {
+                final int w = layered.succ[p];
+                int previous = v;
+                for (int l = layered.level[v] + 1; l < layered.level[w]; l++) {
+                    level[next] = l;
+                    virtualSource[next - n] = v;
+                    virtualTarget[next - n] = w;
+                    from[m] = previous;
+                    to[m++] = next;
+                    previous = next++;
+                }
+                from[m] = previous;
+                to[m++] = w;
+            }
+        }
+
+        downStart = new int[size + 1];
+        down = new int[segments];
+        LayeredGraph.fill(from, to, segments, downStart, down, null);
+        upStart = new int[size + 1];
+        up = new int[segments];
+        LayeredGraph.fill(to, from, segments, upStart, up, null);
+
+        // initial order: index order, virtual nodes after the real ones
+        final int[] counts = new int[layered.levelCount];
+        for (int v = 0; v < size; v++) {
+            counts[level[v]]++;
+        }
+        order = new int[layered.levelCount][];
+        for (int l = 0; l < counts.length; l++) {
+            order[l] = new int[counts[l]];
+            counts[l] = 0;
+        }
+        position = new int[size];
+        for (int v = 0; v < size; v++) {
+            position[v] = counts[level[v]]++;
+            order[level[v]][position[v]] = v;
+        }
+    }
+
+    public boolean isVirtual(int node) {
+        return node >= graph.size();
+    }
+
+    public int getLevelCount() {
+        return order.length;
+    }
+
+    /**
+     * @return the nodes of the level, virtual ones included.
+     */
+    public int[] level(int index) {
+        return order[index];
+    }
+
+    void setLevel(int index, int[] nodes) {
+        order[index] = nodes;
+        for (int i = 0; i < nodes.length; i++) {
+            position[nodes[i]] = i;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+
+/**
+ * Levels without crossing reduction: everything is linear in the size
+ * of the diagram so it is the layout of the huge ones.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class LinearLayoutProvider implements LayoutProvider {
+    @Override public AbstractLayout<Node, Edge> create(final Diagram diagram, final LayoutOptions options) {
+        return LevelLayoutProvider.layout(diagram, options, 0);
+    }
+
+    @Override public String key() {
+        return "linear";
+    }
+}
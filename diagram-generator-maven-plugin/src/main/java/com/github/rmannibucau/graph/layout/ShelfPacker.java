@@ -0,0 +1,81 @@
+package com.github.rmannibucau.graph.layout;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs boxes in rows (shelves): the tallest boxes go first, left to right,
+ * and a new shelf is opened when the next box doesn't fit in the width.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class ShelfPacker {
+    private final int maxWidth;
+    private final int gap;
+
+    private int width;
+    private int height;
+
+    /**
+     * @param maxWidth width of a shelf, widened to the largest box if needed.
+     * @param gap space between two boxes.
+     */
+    public ShelfPacker(int maxWidth, int gap) {
+        this.maxWidth = maxWidth;
+        this.gap = gap;
+    }
+
+    /**
+     * @return the top left corner of each box, in the order of the boxes.
+     */
+    public Point[] pack(final Dimension[] boxes) {
+        final Integer[] order = new Integer[boxes.length];
+        int limit = maxWidth;
+        for (int i = 0; i < boxes.length; i++) {
+            order[i] = i;
+            limit = Math.max(limit, boxes[i].width);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                final Dimension d1 = boxes[o1];
+                final Dimension d2 = boxes[o2];
+                if (d1.height != d2.height) {
+                    return d2.height - d1.height;
+                }
+                return d2.width - d1.width;
+            }
+        });
+
+        final Point[] positions = new Point[boxes.length];
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+        width = 0;
+        for (int i : order) {
+            final Dimension box = boxes[i];
+            if (x > 0 && x + box.width > limit) {
+                y += shelfHeight + gap;
+                x = 0;
+                shelfHeight = 0;
+            }
+
+            positions[i] = new Point(x, y);
+            width = Math.max(width, x + box.width);
+            shelfHeight = Math.max(shelfHeight, box.height);
+            x += box.width + gap;
+        }
+        height = y + shelfHeight;
+        return positions;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -1,27 +1,45 @@
 package com.github.rmannibucau.graph.renderer;
 
-import com.github.rmannibucau.graph.layout.LevelLayout;
+import com.github.rmannibucau.DiagramGeneratorMojo;
+import com.github.rmannibucau.concurrent.RasterMemoryLimiter;
+import com.github.rmannibucau.concurrent.RasterPool;
+import com.github.rmannibucau.graph.label.LabelPlacer;
+import com.github.rmannibucau.graph.transformer.VertexShapeTransformer;
 import com.github.rmannibucau.loader.spi.graph.Diagram;
 import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.IconCache;
 import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
 import org.apache.batik.dom.GenericDOMImplementation;
 import org.apache.batik.svggen.SVGGraphics2D;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
-import org.apache.batik.transcoder.image.ImageTranscoder;
-import org.apache.batik.transcoder.image.JPEGTranscoder;
-import org.apache.batik.transcoder.image.PNGTranscoder;
-import org.apache.commons.collections15.Transformer;
+import org.apache.maven.plugin.logging.Log;
 import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPOutputStream;
 
 public class BatikRenderer implements DiagramRenderer {
-    SVGGraphics2D svgGenerator;
+    private final DiagramGeneratorMojo configuration;
+    private final Log log;
+    private final RasterMemoryLimiter limiter;
+    private final RasterPool pool;
+    private final ExecutorService layoutExecutor;
+    private final ExecutorService encoderExecutor;
 
     int nodeHeight = 50;
     int nodeWidth = 50;
@@ -29,72 +47,197 @@ public class BatikRenderer implements DiagramRenderer {
     int margin = 20;
     int fontSize = 5;
 
-    Transformer<Node, Shape> vertexShapeTransformer = new Transformer<Node, Shape>() {
+    // node box plus its margin, shared by the layout and the drawing
+    VertexShapeTransformer vertexShapeTransformer = new VertexShapeTransformer(new Dimension(nodeWidth + margin, nodeHeight + margin));
 
-        @Override
-        public Shape transform(Node node) {
-            return new Rectangle(0, 0, nodeWidth + margin, nodeHeight + margin);
-        }
-    };
+    public BatikRenderer(DiagramGeneratorMojo configuration, Log log, RasterMemoryLimiter limiter, RasterPool pool,
+                         ExecutorService layoutExecutor, ExecutorService encoderExecutor) {
+        this.configuration = configuration;
+        this.log = log;
+        this.limiter = limiter;
+        this.pool = pool;
+        this.layoutExecutor = layoutExecutor;
+        this.encoderExecutor = encoderExecutor;
+    }
 
+    // one encoder per format walking the same layout, the node geometries are all measured by the layout
     @Override
-    public void render(Diagram diagram, int width, int height, OutputFormat format, File output) {
-        final LevelLayout layout = new LevelLayout(diagram);
-        layout.setSize(new Dimension(width, height));
-        layout.setVertexShapeTransformer(vertexShapeTransformer);
-        layout.initialize();
-        Document document = createSvgDocument();
-        svgGenerator = new SVGGraphics2D(document);
-        drawNodes(layout);
-        drawEdges(layout);
-
-        switch (format) {
-            case PNG:
-                writePng(new File(output, diagram.getName() + ".png"), svgGenerator);
-                break;
-            case JPG:
-                writeJpg(new File(output, diagram.getName() + ".jpg"), svgGenerator);
-                break;
-            case SVG:
-                writeSvg(new File(output, diagram.getName() + ".svg"), svgGenerator);
-                break;
-        }
-    }
-
-    private void drawNodes(LevelLayout layout) {
+    public void render(final Diagram diagram, int width, int height, List<OutputFormat> formats, final File output) {
+        final AbstractLayout<Node, Edge> layout = DiagramLayouts.layout(configuration, log, layoutExecutor, diagram,
+                new Dimension(width, height), vertexShapeTransformer, false, output);
+        final List<Callable<Void>> encoders = new ArrayList<Callable<Void>>(formats.size());
+        for (final OutputFormat format : formats) {
+            encoders.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    write(layout, diagram.getName(), format, output);
+                    return null;
+                }
+            });
+        }
+        Encoders.run(encoderExecutor, encoders);
+    }
+
+    private void write(AbstractLayout<Node, Edge> layout, String name, OutputFormat format, File output) {
+        if (format != OutputFormat.SVG && format != OutputFormat.SVGZ) {
+            writeRaster(layout, name, format, output);
+            return;
+        }
+
+        final File file = new File(output, name + "." + format.getExtension());
+        final boolean gzip = format == OutputFormat.SVGZ;
+        if ("dom".equalsIgnoreCase(configuration.getSvgWriter())) {
+            Document document = createSvgDocument();
+            final SVGGraphics2D svgGenerator = new SVGGraphics2D(document);
+            final DiagramCanvas canvas = new GraphicsCanvas(svgGenerator);
+            drawNodes(layout, canvas);
+            drawEdges(layout, canvas, svgGenerator.getFontMetrics());
+            writeSvg(file, gzip, svgGenerator);
+        } else {
+            streamSvg(layout, file, gzip);
+        }
+    }
+
+    private static OutputStream openSvg(File file, boolean gzip) throws IOException {
+        final OutputStream ostream = RasterImages.open(file);
+        if (gzip) {
+            return new GZIPOutputStream(ostream, 64 * 1024);
+        }
+        return ostream;
+    }
+
+    // no DOM, the elements are written while the layout is walked
+    private void streamSvg(AbstractLayout<Node, Edge> layout, File file, boolean gzip) {
+        final Dimension size = layout.getSize();
+        OutputStream ostream = null;
+        try {
+            ostream = openSvg(file, gzip);
+            final SvgStreamWriter writer = new SvgStreamWriter(ostream,
+                    size.width + 2 * margin + nodeWidth, size.height + 2 * margin + nodeHeight, boxes(layout), icons(layout));
+            drawNodes(layout, writer);
+            drawEdges(layout, writer, Java2DPainter.metrics(Java2DPainter.MEASURE_FONT)); // default font of SVGGraphics2D
+            writer.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (ostream != null) {
+                try {
+                    ostream.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    // the symbols of the leading defs of the streamed svg
+    private Collection<Dimension> boxes(AbstractLayout<Node, Edge> layout) {
+        final Set<Dimension> boxes = new LinkedHashSet<Dimension>();
+        for (Node node : layout.getGraph().getVertices()) {
+            if (IconCache.get(node.getIconKey()) == null) {
+                boxes.add(new Dimension(boxWidth(node), boxHeight(node)));
+            }
+        }
+        return boxes;
+    }
+
+    private static Map<String, BufferedImage> icons(AbstractLayout<Node, Edge> layout) {
+        final Map<String, BufferedImage> icons = new LinkedHashMap<String, BufferedImage>();
+        for (Node node : layout.getGraph().getVertices()) {
+            final BufferedImage icon = IconCache.get(node.getIconKey());
+            if (icon != null) {
+                icons.put(node.getIconKey(), icon);
+            }
+        }
+        return icons;
+    }
+
+    // the drawing of the svg replayed on the picture, no svg document to build then to parse and rasterize again
+    private void writeRaster(AbstractLayout<Node, Edge> layout, String name, OutputFormat format, File output) {
+        final Dimension size = layout.getSize();
+        final int width = size.width + 2 * margin + nodeWidth;
+        final int height = size.height + 2 * margin + nodeHeight;
+        final boolean png = format == OutputFormat.PNG;
+        final int acquired = limiter.acquire(pool.bytes(width, height));
+        final BufferedImage bi = pool.borrow(width, height, png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        try {
+            // like the svg, png pictures have no background
+            final Graphics2D g = png ? RasterImages.createTransparentGraphics(bi) : RasterImages.createGraphics(bi);
+            try {
+                final DiagramCanvas canvas = new GraphicsCanvas(g);
+                drawNodes(layout, canvas);
+                drawEdges(layout, canvas, Java2DPainter.metrics(Java2DPainter.MEASURE_FONT));
+            } finally {
+                g.dispose();
+            }
+            RasterImages.write(name, bi, format, output,
+                    PngCompression.valueOf(configuration.getPngCompression().toUpperCase()), layoutExecutor, pool);
+        } finally {
+            pool.release(bi);
+            limiter.release(acquired);
+        }
+    }
+
+    private void drawNodes(AbstractLayout<Node, Edge> layout, DiagramCanvas canvas) {
         for (Node node : layout.getGraph().getVertices()) {
             int xpos = (int) layout.getX(node) + margin;
             int ypos = (int) layout.getY(node) + +margin;
+            int w = boxWidth(node);
+            int h = boxHeight(node);
 
-            svgGenerator.setPaint(Color.GREEN);
-            svgGenerator.fill(new Rectangle(xpos, ypos, nodeWidth, nodeHeight));
-            svgGenerator.setPaint(Color.black);
-            svgGenerator.drawRect(xpos, ypos, nodeWidth, nodeHeight);
-            svgGenerator.setPaint(Color.black);
-            svgGenerator.setBackground(Color.white);
-            drawCenteredNodeText(node, xpos, ypos);
+            final BufferedImage icon = IconCache.get(node.getIconKey());
+            if (icon != null) { // like the viewer the icon replaces the box and the text
+                canvas.icon(node.getIconKey(), icon, xpos + (w - icon.getWidth()) / 2, ypos + (h - icon.getHeight()) / 2);
+                continue;
+            }
+
+            canvas.box(xpos, ypos, w, h);
+            drawCenteredNodeText(canvas, node, xpos, ypos, w, h);
         }
     }
 
-    private void drawCenteredNodeText(Node node, int xpos, int ypos) {
-        svgGenerator.drawString(node.getText(), (xpos + nodeWidth / 2) - (node.getText().length() /2)*fontSize, ypos + nodeHeight / 2);
+    private int boxWidth(Node node) {
+        return vertexShapeTransformer.getGeometry(node).getWidth() - margin;
     }
 
-    private void drawEdges(LevelLayout layout) {
+    private int boxHeight(Node node) {
+        return vertexShapeTransformer.getGeometry(node).getHeight() - margin;
+    }
+
+    private void drawCenteredNodeText(DiagramCanvas canvas, Node node, int xpos, int ypos, int w, int h) {
+        canvas.text(node.getText(), (xpos + w / 2) - (node.getText().length() /2)*fontSize, ypos + h / 2);
+    }
+
+    private void drawEdges(AbstractLayout<Node, Edge> layout, DiagramCanvas canvas, FontMetrics metrics) {
+        final Dimension size = layout.getSize();
+        final LabelPlacer placer = new LabelPlacer(new Rectangle(0, 0, size.width + 2 * margin + nodeWidth, size.height + 2 * margin + nodeHeight),
+                LabelPlacer.DEFAULT_CELL_SIZE);
+        for (Node node : layout.getGraph().getVertices()) {
+            placer.addObstacle(new Rectangle((int) layout.getX(node) + margin, (int) layout.getY(node) + margin, boxWidth(node), boxHeight(node)));
+        }
+
         for (Edge edge : layout.getGraph().getEdges()) {
-            int sourceX = (int) layout.getX(layout.getGraph().getSource(edge));
-            int sourceY = (int) layout.getY(layout.getGraph().getSource(edge));
+            Node source = layout.getGraph().getSource(edge);
+            Node target = layout.getGraph().getDest(edge);
+            int sourceX = (int) layout.getX(source) + margin + boxWidth(source) / 2;
+            int sourceY = (int) layout.getY(source) + margin + boxHeight(source);
 
-            int targetX = (int) layout.getX(layout.getGraph().getDest(edge));
-            int targetY = (int) layout.getY(layout.getGraph().getDest(edge));
+            int targetX = (int) layout.getX(target) + margin + boxWidth(target) / 2;
+            int targetY = (int) layout.getY(target) + margin;
 
-            svgGenerator.setPaint(Color.black);
-            drawArrow(svgGenerator, sourceX + margin + nodeWidth / 2, sourceY + margin + nodeHeight, targetX + margin + nodeWidth / 2, targetY + margin);
-            svgGenerator.drawString(edge.getText(), sourceX + (targetX - sourceX) / 2 - margin, targetY + (targetY - sourceY) / 2 - margin);
+            canvas.arrow(sourceX, sourceY, targetX, targetY);
+
+            final String text = edge.getText();
+            if (text != null && !text.isEmpty()) {
+                final Rectangle2D box = placer.place(new Point(sourceX, sourceY), new Point(targetX, targetY),
+                        metrics.stringWidth(text), metrics.getHeight());
+                canvas.text(text, (float) box.getX(), (float) box.getY() + metrics.getAscent());
+            }
         }
     }
 
-    private void drawArrow(SVGGraphics2D svgGenerator, int sourceX, int sourceY, int targetX, int targetY) {
+    // on the svg document (svgWriter=dom) every edge gets its own head polygon, SVGGraphics2D has no marker
+    private static void drawArrow(Graphics2D svgGenerator, int sourceX, int sourceY, int targetX, int targetY) {
         AffineTransform tx = new AffineTransform();
         Line2D.Double line = new Line2D.Double(sourceX, sourceY, targetX, targetY);
         svgGenerator.drawLine(sourceX, sourceY, targetX, targetY);
@@ -124,39 +267,58 @@ public class BatikRenderer implements DiagramRenderer {
         return domImpl.createDocument(svgNS, "svg", null);
     }
 
-    public void writeJpg(File outputFile, SVGGraphics2D svgGenerator) {
-        JPEGTranscoder transcoder = new JPEGTranscoder();
-        transcoder.addTranscodingHint(JPEGTranscoder.KEY_QUALITY,
-                new Float(.8));
-
-        transcode(outputFile, svgGenerator, transcoder);
-    }
-
-    public void writePng(File outputFile, SVGGraphics2D svgGenerator) {
-        PNGTranscoder transcoder = new PNGTranscoder();
-        transcode(outputFile, svgGenerator, transcoder);
-    }
-
-    private void transcode(File outputFile, SVGGraphics2D svgGenerator, ImageTranscoder transcoder) {
+    private void writeSvg(File output, boolean gzip, SVGGraphics2D svgGenerator) {
+        OutputStream ostream = null;
         try {
-            TranscoderInput input = new TranscoderInput(svgGenerator.getDOMFactory());
-            OutputStream ostream = new FileOutputStream(outputFile);
-            TranscoderOutput output = new TranscoderOutput(ostream);
-            transcoder.transcode(input, output);
-            ostream.flush();
-            ostream.close();
+            boolean useCSS = true; // we want to use CSS style attributes
+            ostream = openSvg(output, gzip);
+            Writer out = new OutputStreamWriter(ostream, "UTF-8");
+            svgGenerator.stream(out, useCSS);
+            out.flush();
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            if (ostream != null) {
+                try {
+                    ostream.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
         }
     }
 
-    private void writeSvg(File output, SVGGraphics2D svgGenerator) {
-        try {
-            boolean useCSS = true; // we want to use CSS style attributes
-            Writer out = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
-            svgGenerator.stream(out, useCSS);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    private static class GraphicsCanvas implements DiagramCanvas {
+        private final Graphics2D graphics;
+
+        private GraphicsCanvas(Graphics2D graphics) {
+            this.graphics = graphics;
+        }
+
+        @Override
+        public void box(int x, int y, int width, int height) {
+            graphics.setPaint(Color.GREEN);
+            graphics.fill(new Rectangle(x, y, width, height));
+            graphics.setPaint(Color.black);
+            graphics.drawRect(x, y, width, height);
+            graphics.setPaint(Color.black);
+            graphics.setBackground(Color.white);
+        }
+
+        @Override
+        public void icon(String key, BufferedImage icon, int x, int y) {
+            graphics.drawImage(icon, x, y, null);
+        }
+
+        @Override
+        public void text(String text, float x, float y) {
+            graphics.drawString(text, x, y);
+        }
+
+        @Override
+        public void arrow(int sourceX, int sourceY, int targetX, int targetY) {
+            graphics.setPaint(Color.black);
+            drawArrow(graphics, sourceX, sourceY, targetX, targetY);
         }
     }
 }
@@ -0,0 +1,108 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.graph.GraphViewer;
+import com.github.rmannibucau.graph.view.ViewIndex;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Context;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.renderers.BasicRenderer;
+import edu.uci.ics.jung.visualization.transform.shape.GraphicsDecorator;
+
+import java.awt.Dimension;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ConcurrentModificationException;
+
+/**
+ * Renderer of the viewer only painting what is visible: the nodes and edges
+ * crossing the viewport are found with the {@link ViewIndex} of the viewer.
+ *
+ * Under a zoom threshold (level of detail) nodes are plain boxes and the
+ * labels are not painted at all, they would be unreadable anyway.
+ *
+ * Edges are fully qualified here since {@code Renderer.Edge} hides the import.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class CullingRenderer extends BasicRenderer<Node, com.github.rmannibucau.loader.spi.graph.Edge> {
+    public static final double DEFAULT_DETAIL_THRESHOLD = 0.5;
+
+    private final GraphViewer viewer;
+    private final EdgeLabelRenderer labels;
+    private double detailThreshold = DEFAULT_DETAIL_THRESHOLD;
+    private boolean detailed = true;
+
+    public CullingRenderer(GraphViewer viewer, EdgeLabelRenderer labels) {
+        this.viewer = viewer;
+        this.labels = labels;
+    }
+
+    public void setDetailThreshold(double detailThreshold) {
+        this.detailThreshold = detailThreshold;
+    }
+
+    @Override
+    public void render(RenderContext<Node, com.github.rmannibucau.loader.spi.graph.Edge> rc,
+                       Layout<Node, com.github.rmannibucau.loader.spi.graph.Edge> layout) {
+        final ViewIndex index = viewer.getIndex();
+        final MultiLayerTransformer transformer = rc.getMultiLayerTransformer();
+        final Dimension size = viewer.getSize();
+        final Shape screen = new Rectangle(0, 0, size.width, size.height);
+        final Rectangle2D visible = index.area(transformer, screen);
+        final Rectangle2D view = transformer.inverseTransform(Layer.VIEW, screen).getBounds2D(); // edge labels are in the layout layer
+        detailed = transformer.getTransformer(Layer.VIEW).getScale() * transformer.getTransformer(Layer.LAYOUT).getScale() >= detailThreshold;
+
+        try {
+            for (com.github.rmannibucau.loader.spi.graph.Edge edge : index.edges(visible)) {
+                renderEdge(rc, layout, edge);
+            }
+            if (detailed) {
+                for (com.github.rmannibucau.loader.spi.graph.Edge edge : labels.labels(rc, layout, view)) {
+                    renderEdgeLabel(rc, layout, edge);
+                }
+            }
+            for (Node node : index.nodes(visible)) {
+                renderVertex(rc, layout, node);
+                if (detailed) {
+                    renderVertexLabel(rc, layout, node);
+                }
+            }
+        } catch (ConcurrentModificationException cme) {
+            rc.getScreenDevice().repaint();
+        }
+    }
+
+    @Override
+    public void renderVertex(RenderContext<Node, com.github.rmannibucau.loader.spi.graph.Edge> rc,
+                             Layout<Node, com.github.rmannibucau.loader.spi.graph.Edge> layout, Node node) {
+        if (detailed) {
+            super.renderVertex(rc, layout, node);
+            return;
+        }
+
+        final Graph<Node, com.github.rmannibucau.loader.spi.graph.Edge> graph = layout.getGraph();
+        if (!rc.getVertexIncludePredicate().evaluate(
+                Context.<Graph<Node, com.github.rmannibucau.loader.spi.graph.Edge>, Node>getInstance(graph, node))) {
+            return;
+        }
+
+        final Point2D center = rc.getMultiLayerTransformer().transform(Layer.LAYOUT, layout.transform(node));
+        final Shape shape = AffineTransform.getTranslateInstance(center.getX(), center.getY())
+                .createTransformedShape(rc.getVertexShapeTransformer().transform(node));
+        final GraphicsDecorator g = rc.getGraphicsContext();
+        final Paint old = g.getPaint();
+        g.setPaint(rc.getVertexFillPaintTransformer().transform(node));
+        g.fill(shape);
+        g.setPaint(rc.getVertexDrawPaintTransformer().transform(node));
+        g.draw(shape);
+        g.setPaint(old);
+    }
+}
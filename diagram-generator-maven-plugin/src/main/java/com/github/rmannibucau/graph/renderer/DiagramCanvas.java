@@ -0,0 +1,26 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.loader.spi.graph.Node;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * What {@link BatikRenderer} draws, either on a {@link java.awt.Graphics2D}
+ * (svg document or picture) or directly as SVG elements.
+ *
+ * @author Romain Manni-Bucau
+ */
+interface DiagramCanvas {
+    void box(int x, int y, int width, int height);
+
+    /**
+     * Draws an icon instead of the box of a node.
+     *
+     * @param key key of the icon ({@link Node#getIconKey()}).
+     */
+    void icon(String key, BufferedImage icon, int x, int y);
+
+    void text(String text, float x, float y);
+
+    void arrow(int sourceX, int sourceY, int targetX, int targetY);
+}
@@ -0,0 +1,74 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.DiagramGeneratorMojo;
+import com.github.rmannibucau.graph.layout.LayoutCache;
+import com.github.rmannibucau.graph.layout.LayoutHelper;
+import com.github.rmannibucau.graph.layout.LayoutOptions;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import org.apache.commons.collections15.Transformer;
+import org.apache.maven.plugin.logging.Log;
+
+import java.awt.Dimension;
+import java.awt.Shape;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Lays out a diagram with the configured {@link com.github.rmannibucau.graph.layout.LayoutProvider},
+ * reusing the previous layout in incremental mode.
+ *
+ * @author Romain Manni-Bucau
+ */
+final class DiagramLayouts {
+    private DiagramLayouts() {
+        // no-op
+    }
+
+    static AbstractLayout<Node, Edge> layout(final DiagramGeneratorMojo configuration, final Log log, final ExecutorService executor,
+                                             final Diagram diagram, final Dimension size, final Transformer<Node, Shape> shapes,
+                                             final boolean adjust, final File output) {
+        final LayoutOptions options = new LayoutOptions();
+        options.setSize(size);
+        options.setVertexShapeTransformer(shapes);
+        options.setAdjust(adjust);
+        options.setCrossingSweeps(configuration.getCrossingSweeps());
+        options.setExecutor(executor);
+        options.setLog(log);
+        options.setMaxNodes(configuration.getLayoutMaxNodes());
+        options.setMaxEdges(configuration.getLayoutMaxEdges());
+        options.setMaxCycleDensity(configuration.getLayoutMaxCycleDensity());
+        options.setBudget(configuration.getLayoutBudget());
+
+        final LayoutCache cache = loadCache(configuration, log, diagram.getName(), output);
+        options.setCache(cache);
+        final AbstractLayout<Node, Edge> layout = LayoutHelper.getProvider(configuration.getLayout()).create(diagram, options);
+        saveCache(log, cache);
+        return layout;
+    }
+
+    private static LayoutCache loadCache(final DiagramGeneratorMojo configuration, final Log log, final String name, final File output) {
+        if (!configuration.isIncremental()) {
+            return null;
+        }
+        try {
+            return LayoutCache.load(output, name);
+        } catch (IOException e) {
+            log.warn("can't read the layout cache of " + name + ", laying it out from scratch", e);
+            return null;
+        }
+    }
+
+    private static void saveCache(final Log log, final LayoutCache cache) {
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                log.warn("can't save the layout cache", e);
+            }
+        }
+    }
+}
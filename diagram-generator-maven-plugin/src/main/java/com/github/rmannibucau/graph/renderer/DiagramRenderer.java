@@ -3,7 +3,11 @@ package com.github.rmannibucau.graph.renderer;
 import com.github.rmannibucau.loader.spi.graph.Diagram;
 
 import java.io.File;
+import java.util.List;
 
 public interface DiagramRenderer {
-  public void render(Diagram diagram, int width, int height, OutputFormat format, File output);
+  /**
+   * Lays out the diagram once and writes it in each of the formats.
+   */
+  public void render(Diagram diagram, int width, int height, List<OutputFormat> formats, File output);
 }
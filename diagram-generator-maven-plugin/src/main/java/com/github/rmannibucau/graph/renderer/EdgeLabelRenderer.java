@@ -1,5 +1,7 @@
 package com.github.rmannibucau.graph.renderer;
 
+import com.github.rmannibucau.graph.label.LabelPlacer;
+import com.github.rmannibucau.graph.view.BoundsQuadtree;
 import com.github.rmannibucau.loader.spi.graph.Edge;
 import com.github.rmannibucau.loader.spi.graph.Node;
 import edu.uci.ics.jung.algorithms.layout.Layout;
@@ -13,51 +15,112 @@ import edu.uci.ics.jung.visualization.transform.shape.GraphicsDecorator;
 
 import java.awt.Component;
 import java.awt.Dimension;
-import java.awt.FontMetrics;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Collection;
 
 /**
  * simplifying the edge label renderer to have something more simple but more readable.
  *
+ * Labels are placed with a {@link LabelPlacer} so they don't cover the nodes
+ * or the other labels. All the labels are placed at once and kept until
+ * {@link #reset()} (nodes moved) or a zoom of the layout layer: panning
+ * doesn't move them and only the visible ones need to be painted.
+ *
  * @author Romain Manni-Bucau
  */
 public class EdgeLabelRenderer extends BasicEdgeLabelRenderer<Node, Edge> {
+    private BoundsQuadtree<Edge> boxes;
+    private AffineTransform placedWith; // layout layer transform of the placement
+
+    public void reset() {
+        boxes = null;
+    }
+
     public void labelEdge(RenderContext<Node, Edge> rc, Layout<Node, Edge> layout, Edge e, String label) {
         if (label == null || label.length() == 0) {
             return;
         }
 
-        Graph<Node, Edge> graph = layout.getGraph();
-        // don't draw edge if either incident vertex is not drawn
-        Pair<Node> endpoints = graph.getEndpoints(e);
-        Node v1 = endpoints.getFirst();
-        Node v2 = endpoints.getSecond();
-        if (!rc.getEdgeIncludePredicate().evaluate(Context.<Graph<Node, Edge>, Edge>getInstance(graph, e))) {
-            return;
-        }
-
-        if (!rc.getVertexIncludePredicate().evaluate(Context.<Graph<Node, Edge>, Node>getInstance(graph, v1)) ||
-                !rc.getVertexIncludePredicate().evaluate(Context.<Graph<Node, Edge>, Node>getInstance(graph, v2))) {
+        Rectangle2D box = boxes(rc, layout).getBounds(e);
+        if (box == null) { // not drawn
             return;
         }
 
-        Point2D p1 = rc.getMultiLayerTransformer().transform(Layer.LAYOUT, layout.transform(v1));
-        Point2D p2 = rc.getMultiLayerTransformer().transform(Layer.LAYOUT, layout.transform(v2));
-
         GraphicsDecorator g = rc.getGraphicsContext();
         Component component = prepareRenderer(rc, rc.getEdgeLabelRenderer(), label, rc.getPickedEdgeState().isPicked(e), e);
         Dimension d = component.getPreferredSize();
 
         AffineTransform old = g.getTransform();
         AffineTransform xform = new AffineTransform(old);
-        FontMetrics fm = g.getFontMetrics();
-        int w = fm.stringWidth(e.getText());
-        double p =  Math.max(0, p1.getX() +  p2.getX() - w);
-        xform.translate(Math.min(layout.getSize().width - w, p / 2), (p1.getY() + p2.getY() - fm .getHeight()) / 2);
+        xform.translate(box.getX(), box.getY());
         g.setTransform(xform);
         g.draw(component, rc.getRendererPane(), 0, 0, d.width, d.height, true);
 
         g.setTransform(old);
     }
+
+    /**
+     * @param area in layout layer coordinates.
+     * @return the edges whose label is in the area.
+     */
+    public Collection<Edge> labels(RenderContext<Node, Edge> rc, Layout<Node, Edge> layout, Rectangle2D area) {
+        return boxes(rc, layout).query(area);
+    }
+
+    private BoundsQuadtree<Edge> boxes(RenderContext<Node, Edge> rc, Layout<Node, Edge> layout) {
+        final AffineTransform layoutTransform = rc.getMultiLayerTransformer().getTransformer(Layer.LAYOUT).getTransform();
+        if (boxes == null || !layoutTransform.equals(placedWith)) {
+            boxes = place(rc, layout);
+            placedWith = new AffineTransform(layoutTransform);
+        }
+        return boxes;
+    }
+
+    private BoundsQuadtree<Edge> place(RenderContext<Node, Edge> rc, Layout<Node, Edge> layout) {
+        final Dimension size = layout.getSize();
+        final Rectangle2D area = new Rectangle2D.Double(0, 0, size.width, size.height);
+        final LabelPlacer placer = placer(rc, layout, area);
+        final BoundsQuadtree<Edge> placed = new BoundsQuadtree<Edge>(area);
+
+        final Graph<Node, Edge> graph = layout.getGraph();
+        for (Edge e : graph.getEdges()) {
+            final String label = rc.getEdgeLabelTransformer().transform(e);
+            if (label == null || label.length() == 0) {
+                continue;
+            }
+
+            // don't draw edge if either incident vertex is not drawn
+            Pair<Node> endpoints = graph.getEndpoints(e);
+            Node v1 = endpoints.getFirst();
+            Node v2 = endpoints.getSecond();
+            if (!rc.getEdgeIncludePredicate().evaluate(Context.<Graph<Node, Edge>, Edge>getInstance(graph, e))) {
+                continue;
+            }
+
+            if (!rc.getVertexIncludePredicate().evaluate(Context.<Graph<Node, Edge>, Node>getInstance(graph, v1)) ||
+                    !rc.getVertexIncludePredicate().evaluate(Context.<Graph<Node, Edge>, Node>getInstance(graph, v2))) {
+                continue;
+            }
+
+            Point2D p1 = rc.getMultiLayerTransformer().transform(Layer.LAYOUT, layout.transform(v1));
+            Point2D p2 = rc.getMultiLayerTransformer().transform(Layer.LAYOUT, layout.transform(v2));
+            Dimension d = prepareRenderer(rc, rc.getEdgeLabelRenderer(), label, false, e).getPreferredSize();
+            placed.put(e, placer.place(p1, p2, d.width, d.height));
+        }
+        return placed;
+    }
+
+    // node boxes are the initial obstacles
+    private LabelPlacer placer(RenderContext<Node, Edge> rc, Layout<Node, Edge> layout, Rectangle2D area) {
+        final LabelPlacer placer = new LabelPlacer(area, LabelPlacer.DEFAULT_CELL_SIZE);
+        for (Node node : layout.getGraph().getVertices()) {
+            final Point2D center = rc.getMultiLayerTransformer().transform(Layer.LAYOUT, layout.transform(node));
+            final Rectangle2D shape = rc.getVertexShapeTransformer().transform(node).getBounds2D();
+            placer.addObstacle(new Rectangle2D.Double(center.getX() + shape.getX(), center.getY() + shape.getY(),
+                    shape.getWidth(), shape.getHeight()));
+        }
+        return placer;
+    }
 }
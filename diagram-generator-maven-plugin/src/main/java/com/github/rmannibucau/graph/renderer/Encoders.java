@@ -0,0 +1,74 @@
+package com.github.rmannibucau.graph.renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the encoders writing the formats of a diagram from the same layout
+ * concurrently: the first one in the calling thread, the others in the
+ * encoder pool. They only read the layout so they can share it.
+ *
+ * @author Romain Manni-Bucau
+ */
+final class Encoders {
+    private Encoders() {
+        // no-op
+    }
+
+    /**
+     * Waits for all the encoders, the first failure is rethrown once they are all done
+     * (no file is left half written by a running encoder).
+     *
+     * @param executor pool of the other encoders, null to run them all in the calling thread.
+     */
+    static void run(ExecutorService executor, List<Callable<Void>> encoders) {
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>(encoders.size());
+        if (executor != null) {
+            for (Callable<Void> encoder : encoders.subList(1, encoders.size())) {
+                futures.add(executor.submit(encoder));
+            }
+        }
+
+        RuntimeException error = null;
+        try {
+            if (executor != null) {
+                encoders.get(0).call();
+            } else {
+                for (Callable<Void> encoder : encoders) {
+                    encoder.call();
+                }
+            }
+        } catch (RuntimeException e) {
+            error = e;
+        } catch (Exception e) {
+            error = new RuntimeException(e);
+        }
+
+        boolean interrupted = false;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                future.cancel(true);
+                if (error == null) {
+                    error = new RuntimeException("interrupted while encoding the diagram", e);
+                }
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
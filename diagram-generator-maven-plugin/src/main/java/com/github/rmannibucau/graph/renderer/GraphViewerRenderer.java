@@ -1,56 +1,67 @@
 package com.github.rmannibucau.graph.renderer;
 
 import com.github.rmannibucau.DiagramGeneratorMojo;
+import com.github.rmannibucau.concurrent.RasterMemoryLimiter;
+import com.github.rmannibucau.concurrent.RasterPool;
 import com.github.rmannibucau.graph.GraphViewer;
-import com.github.rmannibucau.graph.layout.LevelLayout;
 import com.github.rmannibucau.listener.CloseWindowWaiter;
 import com.github.rmannibucau.loader.spi.graph.Diagram;
 import com.github.rmannibucau.loader.spi.graph.Edge;
 import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import edu.uci.ics.jung.algorithms.layout.StaticLayout;
 import edu.uci.ics.jung.visualization.VisualizationViewer;
 import edu.uci.ics.jung.visualization.control.DefaultModalGraphMouse;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.maven.plugin.logging.Log;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 
 public class GraphViewerRenderer implements DiagramRenderer {
 
-  Logger log = LoggerFactory.getLogger(GraphViewerRenderer.class);
+  private final Log log;
 
   private final DiagramGeneratorMojo configuration;
 
+  private final RasterMemoryLimiter limiter;
+
+  private final RasterPool pool;
+
+  private final ExecutorService layoutExecutor;
+
+  private final ExecutorService encoderExecutor;
+
   VisualizationViewer<Node, Edge> viewer;
 
-  public GraphViewerRenderer(DiagramGeneratorMojo configuration) {
+  public GraphViewerRenderer(DiagramGeneratorMojo configuration, Log log, RasterMemoryLimiter limiter, RasterPool pool,
+                             ExecutorService layoutExecutor, ExecutorService encoderExecutor) {
     this.configuration = configuration;
+    this.log = log;
+    this.limiter = limiter;
+    this.pool = pool;
+    this.layoutExecutor = layoutExecutor;
+    this.encoderExecutor = encoderExecutor;
   }
 
   @Override
-  public void render(Diagram diagram, int width, int height, OutputFormat format, File output) {
+  public void render(Diagram diagram, int width, int height, List<OutputFormat> formats, File output) {
     Dimension outputSize = new Dimension(width, height);
 
-    final LevelLayout layout = new LevelLayout(diagram);
-    viewer = new GraphViewer(layout);
-
-    layout.setVertexShapeTransformer(viewer.getRenderContext().getVertexShapeTransformer());
-    layout.setSize(outputSize);
-    layout.setIgnoreSize(configuration.getAdjust());
-    layout.reset();
+    viewer = new GraphViewer(new StaticLayout<Node, Edge>(diagram)); // the real layout needs the shapes of the viewer
+    final AbstractLayout<Node, Edge> layout = DiagramLayouts.layout(configuration, log, layoutExecutor, diagram,
+        outputSize, viewer.getRenderContext().getVertexShapeTransformer(), configuration.getAdjust(), output);
+    viewer.setGraphLayout(layout);
     viewer.setPreferredSize(layout.getSize());
     viewer.setSize(layout.getSize());
 
-    saveView(layout.getSize(), outputSize, diagram.getName(), output);
+    saveView(layout.getSize(), outputSize, diagram.getName(), formats, output);
     showViewer(diagram);
   }
 
@@ -88,64 +99,36 @@ public class GraphViewerRenderer implements DiagramRenderer {
     return frame;
   }
 
-  private void saveView(Dimension currentSize, Dimension desiredSize, String name, File output) {
-    BufferedImage bi = createImage(currentSize, desiredSize);
-    writeImage(name, bi, output);
-  }
-
-  private BufferedImage createImage(Dimension currentSize, Dimension desiredSize) {
-    BufferedImage bi = new BufferedImage(currentSize.width, currentSize.height, BufferedImage.TYPE_INT_ARGB);
-    bi.getGraphics().fillRect(0,0, currentSize.width, currentSize.height);
-    Graphics2D g = bi.createGraphics();
-    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-
-    boolean db = viewer.isDoubleBuffered();
-    viewer.setDoubleBuffered(false);
-    viewer.paint(g);
-    viewer.setDoubleBuffered(db);
-    bi = resizeImage(currentSize, desiredSize, bi);
-    g.dispose();
-    return bi;
-  }
-
-  private BufferedImage resizeImage(Dimension currentSize, Dimension desiredSize, BufferedImage bi) {
-    if (!currentSize.equals(desiredSize)) {
-      double xFactor = desiredSize.width * 1. / currentSize.width;
-      double yFactor = desiredSize.height * 1. / currentSize.height;
-      double factor = Math.min(xFactor, yFactor);
-      log.info("optimal size is (" + currentSize.width + ", " + currentSize.height + ")");
-      log.info("scaling with a factor of " + factor);
-
-      AffineTransform tx = new AffineTransform();
-      tx.scale(factor, factor);
-      AffineTransformOp op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BILINEAR);
-      BufferedImage biNew = new BufferedImage((int) (bi.getWidth() * factor), (int) (bi.getHeight() * factor), bi.getType());
-      bi = op.filter(bi, biNew);
-    }
-    return bi;
-  }
-
-  private void writeImage(String name, BufferedImage bi, File output) {
-    OutputStream os = null;
+  // the view is painted once, each format only encodes the picture
+  private void saveView(Dimension currentSize, Dimension desiredSize, final String name, List<OutputFormat> formats,
+                        final File output) {
+    final double factor = RasterImages.factor(log, currentSize, desiredSize);
+    final Dimension size = RasterImages.scale(currentSize, factor);
+    final int acquired = limiter.acquire(pool.bytes(size.width, size.height));
+    final BufferedImage bi = pool.borrow(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
     try {
-      os = new FileOutputStream(new File(output, name + "." + configuration.getFormat()));
-      if (!ImageIO.write(bi, configuration.getFormat(), os)) {
-        throw new RuntimeException("can't save picture " + name + "." + configuration.getFormat());
+      Graphics2D g = RasterImages.createGraphics(bi);
+      g.scale(factor, factor); // the viewer draws at the layout size
+      boolean db = viewer.isDoubleBuffered();
+      viewer.setDoubleBuffered(false);
+      viewer.paint(g);
+      viewer.setDoubleBuffered(db);
+      g.dispose();
+      final PngCompression compression = PngCompression.valueOf(configuration.getPngCompression().toUpperCase());
+      final List<Callable<Void>> encoders = new ArrayList<Callable<Void>>(formats.size());
+      for (final OutputFormat format : formats) {
+        encoders.add(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            RasterImages.write(name, bi, format, output, compression, layoutExecutor, pool);
+            return null;
+          }
+        });
       }
-    } catch (IOException e) {
-      throw new RuntimeException("can't save the diagram", e);
+      Encoders.run(encoderExecutor, encoders);
     } finally {
-      if (os != null) {
-        try {
-          os.flush();
-          os.close();
-        } catch (IOException e) {
-          throw new RuntimeException("can't close diagram", e);
-        }
-      }
+      pool.release(bi);
+      limiter.release(acquired);
     }
   }
-
 }
@@ -0,0 +1,400 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.graph.label.LabelPlacer;
+import com.github.rmannibucau.graph.transformer.EdgeLabelTransformer;
+import com.github.rmannibucau.graph.transformer.VertexFillPaintTransformer;
+import com.github.rmannibucau.graph.transformer.VertexLabelTransformer;
+import com.github.rmannibucau.graph.view.BoundsQuadtree;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.IconCache;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.Graph;
+import org.apache.commons.collections15.Transformer;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Paints a laid out diagram directly on a {@link Graphics2D}, without any
+ * Swing component so it works with java.awt.headless=true.
+ *
+ * The drawing is the one of the JUNG viewer configured by
+ * {@link com.github.rmannibucau.graph.GraphViewer}: edges first (line,
+ * notched arrow on the border of the target, label placed by a
+ * {@link LabelPlacer}) then nodes (icon or filled box, centered label),
+ * with the same fonts, colors and strokes.
+ *
+ * A {@link Scene} places the elements once so a part of the diagram (a
+ * strip of a tiled picture) only paints the elements crossing it.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class Java2DPainter {
+    public static final Font MEASURE_FONT = new Font(Font.DIALOG, Font.PLAIN, 12); // font of the viewer, sizes the nodes
+    public static final Font LABEL_FONT = new Font("Helvetica", Font.PLAIN, 12); // default label font of JUNG
+
+    private static final Color LABEL_COLOR = new Color(51, 51, 51); // foreground of the default look and feel
+    private static final Stroke STROKE = new BasicStroke(1.0f);
+    private static final int ARROW_SIZE = 10;
+    private static final Shape ARROW = notchedArrow(8, ARROW_SIZE, 4);
+    private static final Shape UNIT_LINE = new Line2D.Float(0, 0, 1, 0);
+    private static final float ARROW_PLACEMENT_TOLERANCE = 1;
+    private static final double SCALE_TOLERANCE = 1e-3;
+
+    private final Transformer<Node, Shape> shapes;
+    private final Transformer<Node, Paint> fills = new VertexFillPaintTransformer();
+    private final Transformer<Node, String> nodeLabels = new VertexLabelTransformer();
+    private final Transformer<Edge, String> edgeLabels = new EdgeLabelTransformer();
+
+    public Java2DPainter(Transformer<Node, Shape> shapes) {
+        this.shapes = shapes;
+    }
+
+    /**
+     * @return metrics of a font as components measure it (no antialiasing, integer advances).
+     */
+    public static FontMetrics metrics(Font font) {
+        final Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        try {
+            return g.getFontMetrics(font);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    public void paint(Graphics2D g, Layout<Node, Edge> layout) {
+        paint(g, scene(layout), null);
+    }
+
+    /**
+     * @return the elements of the laid out diagram with their edge labels placed,
+     *         to paint the diagram by parts.
+     */
+    public Scene scene(Layout<Node, Edge> layout) {
+        final Graph<Node, Edge> graph = layout.getGraph();
+        final Dimension size = layout.getSize();
+        final Scene scene = new Scene(layout, new Rectangle2D.Double(0, 0, size.width, size.height));
+        final FontMetrics labelMetrics = metrics(LABEL_FONT);
+        final LabelPlacer placer = placer(layout);
+        for (Edge edge : graph.getEdges()) {
+            final Node target = graph.getDest(edge);
+            final Point2D p1 = center(layout, graph.getSource(edge));
+            final Point2D p2 = center(layout, target);
+            final Rectangle2D bounds = shape(layout, target).getBounds2D(); // the arrow ends on its border
+            bounds.add(p1);
+            bounds.add(new Point2D.Double(p2.getX(), p2.getY() - bounds.getHeight())); // top of a loop
+
+            final String label = edgeLabels.transform(edge);
+            Rectangle2D box = null;
+            if (label != null && label.length() > 0) {
+                box = placer.place(p1, p2, labelMetrics.stringWidth(label), labelMetrics.getHeight());
+                bounds.add(box);
+            }
+            scene.add(new Item(scene.items.size(), edge, null, label, box), grow(bounds, ARROW_SIZE));
+        }
+
+        for (Node node : graph.getVertices()) {
+            final Rectangle2D shape = shape(layout, node).getBounds2D();
+            final Rectangle2D bounds = (Rectangle2D) shape.clone();
+            final String label = nodeLabels.transform(node);
+            if (label != null && label.length() > 0) { // centered on the shape like when painted
+                final int width = labelMetrics.stringWidth(label);
+                final int height = labelMetrics.getHeight();
+                bounds.add(new Rectangle2D.Double(shape.getCenterX() - width / 2, shape.getCenterY() - height / 2, width, height));
+            }
+
+            final BufferedImage icon = IconCache.get(node.getIconKey());
+            if (icon != null) {
+                final Point2D center = center(layout, node);
+                bounds.add(new Rectangle2D.Double(center.getX() - icon.getWidth() / 2, center.getY() - icon.getHeight() / 2,
+                        icon.getWidth(), icon.getHeight()));
+            }
+            scene.add(new Item(scene.items.size(), null, node, label, null), grow(bounds, 0));
+        }
+        return scene;
+    }
+
+    /**
+     * Paints the elements of the scene intersecting an area in their usual order.
+     *
+     * @param area the painted part of the diagram (layout coordinates), null for the whole diagram.
+     */
+    public void paint(Graphics2D g, Scene scene, Rectangle2D area) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setStroke(STROKE);
+
+        final Layout<Node, Edge> layout = scene.layout;
+        final FontMetrics labelMetrics = metrics(LABEL_FONT);
+        for (Item item : scene.items(area)) {
+            if (item.edge != null) {
+                paintEdge(g, layout, item.edge);
+                if (item.labelBox != null) {
+                    final AffineTransform old = g.getTransform();
+                    g.translate(item.labelBox.getX(), item.labelBox.getY());
+                    paintLabel(g, item.label, labelMetrics, 0, 0);
+                    g.setTransform(old);
+                }
+                continue;
+            }
+
+            paintNode(g, layout, item.node);
+            if (item.label != null && item.label.length() > 0) {
+                final Rectangle2D bounds = shape(layout, item.node).getBounds2D();
+                final int width = labelMetrics.stringWidth(item.label);
+                final int height = labelMetrics.getHeight();
+                paintLabel(g, item.label, labelMetrics,
+                        (int) (bounds.getCenterX() - width / 2), (int) (bounds.getCenterY() - height / 2));
+            }
+        }
+    }
+
+    // the stroke and the antialiasing can paint a pixel out of the geometry
+    private static Rectangle2D grow(Rectangle2D bounds, double size) {
+        final double margin = size + 2;
+        return new Rectangle2D.Double(bounds.getX() - margin, bounds.getY() - margin,
+                bounds.getWidth() + 2 * margin, bounds.getHeight() + 2 * margin);
+    }
+
+    private void paintNode(Graphics2D g, Layout<Node, Edge> layout, Node node) {
+        final BufferedImage icon = IconCache.get(node.getIconKey());
+        if (icon != null) {
+            final Point2D center = center(layout, node);
+            paintIcon(g, node.getIconKey(), icon, (int) (float) center.getX() - icon.getWidth() / 2,
+                    (int) (float) center.getY() - icon.getHeight() / 2);
+            return;
+        }
+
+        final Shape shape = shape(layout, node);
+        g.setPaint(fills.transform(node));
+        g.fill(shape);
+        g.setPaint(Color.BLACK);
+        g.draw(shape);
+    }
+
+    // a scaled graphics draws the variant of the icon at the scale in device space instead of resampling it each time
+    private static void paintIcon(Graphics2D g, String key, BufferedImage icon, int x, int y) {
+        final AffineTransform transform = g.getTransform();
+        final double scale = transform.getScaleX();
+        if (Math.abs(scale - 1) < SCALE_TOLERANCE || transform.getShearX() != 0 || transform.getShearY() != 0
+                || Math.abs(transform.getScaleY() - scale) > SCALE_TOLERANCE) {
+            g.drawImage(icon, x, y, null);
+            return;
+        }
+
+        final Point2D origin = transform.transform(new Point2D.Double(x, y), null);
+        final BufferedImage scaled = IconCache.get(key,
+                (int) Math.round(icon.getWidth() * scale), (int) Math.round(icon.getHeight() * scale));
+        g.setTransform(new AffineTransform());
+        g.drawImage(scaled, (int) Math.round(origin.getX()), (int) Math.round(origin.getY()), null);
+        g.setTransform(transform);
+    }
+
+    private void paintEdge(Graphics2D g, Layout<Node, Edge> layout, Edge edge) {
+        final Graph<Node, Edge> graph = layout.getGraph();
+        final Node source = graph.getSource(edge);
+        final Node target = graph.getDest(edge);
+        final Point2D p1 = center(layout, source);
+        final Point2D p2 = center(layout, target);
+        final float x1 = (float) p1.getX();
+        final float y1 = (float) p1.getY();
+        final float x2 = (float) p2.getX();
+        final float y2 = (float) p2.getY();
+
+        final Shape line;
+        if (source.equals(target)) { // loop above the node, its bottom at the center
+            final Rectangle2D bounds = shapes.transform(target).getBounds2D();
+            line = new Ellipse2D.Double(x1 - bounds.getWidth() / 2, y1 - bounds.getHeight(), bounds.getWidth(), bounds.getHeight());
+        } else {
+            line = line(x1, y1, x2, y2);
+        }
+        g.setPaint(Color.BLACK);
+        g.draw(line);
+
+        final Shape targetShape = AffineTransform.getTranslateInstance(x2, y2).createTransformedShape(shapes.transform(target));
+        final AffineTransform at = arrowTransform(line, targetShape);
+        if (at != null) {
+            final Shape arrow = at.createTransformedShape(ARROW);
+            g.fill(arrow);
+            g.draw(arrow);
+        }
+    }
+
+    // the unit line placed like the viewer does (EdgeShape.Line), the same coordinates give the same antialiased pixels
+    private static Shape line(float x1, float y1, float x2, float y2) {
+        final float dx = x2 - x1;
+        final float dy = y2 - y1;
+        final AffineTransform xform = AffineTransform.getTranslateInstance(x1, y1);
+        xform.rotate((float) Math.atan2(dy, dx));
+        xform.scale((float) Math.sqrt(dx * dx + dy * dy), 1.0);
+        return xform.createTransformedShape(UNIT_LINE);
+    }
+
+    private static void paintLabel(Graphics2D g, String label, FontMetrics metrics, int x, int y) {
+        g.setFont(LABEL_FONT);
+        g.setPaint(LABEL_COLOR);
+        g.drawString(label, x, y + metrics.getAscent());
+    }
+
+    // node boxes are the initial obstacles, like in EdgeLabelRenderer
+    private LabelPlacer placer(Layout<Node, Edge> layout) {
+        final Dimension size = layout.getSize();
+        final LabelPlacer placer = new LabelPlacer(new Rectangle2D.Double(0, 0, size.width, size.height), LabelPlacer.DEFAULT_CELL_SIZE);
+        for (Node node : layout.getGraph().getVertices()) {
+            final Point2D center = layout.transform(node);
+            final Rectangle2D shape = shapes.transform(node).getBounds2D();
+            placer.addObstacle(new Rectangle2D.Double(center.getX() + shape.getX(), center.getY() + shape.getY(),
+                    shape.getWidth(), shape.getHeight()));
+        }
+        return placer;
+    }
+
+    private Shape shape(Layout<Node, Edge> layout, Node node) {
+        final Point2D center = center(layout, node);
+        return AffineTransform.getTranslateInstance((float) center.getX(), (float) center.getY())
+                .createTransformedShape(shapes.transform(node));
+    }
+
+    private static Point2D center(Layout<Node, Edge> layout, Node node) {
+        return layout.transform(node);
+    }
+
+    // the arrow tip is where the edge enters the target, found by bisection of the last segment
+    private static AffineTransform arrowTransform(Shape edge, Shape target) {
+        final float[] coords = new float[6];
+        Point2D p1;
+        Point2D p2 = null;
+        for (PathIterator i = new GeneralPath(edge).getPathIterator(null, 1); !i.isDone(); i.next()) {
+            final int type = i.currentSegment(coords);
+            if (type == PathIterator.SEG_MOVETO) {
+                p2 = new Point2D.Float(coords[0], coords[1]);
+            } else if (type == PathIterator.SEG_LINETO) {
+                p1 = p2;
+                p2 = new Point2D.Float(coords[0], coords[1]);
+                if (target.contains(p2)) {
+                    return arrowTransform(new Line2D.Float(p1, p2), target);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static AffineTransform arrowTransform(Line2D segment, Shape target) {
+        Line2D line = segment;
+        float dx = (float) (line.getX1() - line.getX2());
+        float dy = (float) (line.getY1() - line.getY2());
+        while (dx * dx + dy * dy > ARROW_PLACEMENT_TOLERANCE) {
+            line = lastOutsideSegment(line, target);
+            if (line == null) {
+                return null;
+            }
+            dx = (float) (line.getX1() - line.getX2());
+            dy = (float) (line.getY1() - line.getY2());
+        }
+
+        final AffineTransform at = AffineTransform.getTranslateInstance(line.getX1(), line.getY1());
+        at.rotate(-(Math.atan2(dx, dy) + Math.PI / 2));
+        return at;
+    }
+
+    private static Line2D lastOutsideSegment(Line2D segment, Shape target) {
+        if (!target.contains(segment.getP2())) {
+            return null;
+        }
+
+        Line2D line = segment;
+        final Line2D left = new Line2D.Float();
+        final Line2D right = new Line2D.Float();
+        do { // halves until the right one starts inside, the left one crosses the border
+            final double x1 = line.getX1();
+            final double y1 = line.getY1();
+            final double x2 = line.getX2();
+            final double y2 = line.getY2();
+            final double mx = x1 + (x2 - x1) / 2.0;
+            final double my = y1 + (y2 - y1) / 2.0;
+            left.setLine(x1, y1, mx, my);
+            right.setLine(mx, my, x2, y2);
+            line = right;
+        } while (!target.contains(line.getP1()));
+        return left;
+    }
+
+    private static Shape notchedArrow(float base, float height, float notch) {
+        final GeneralPath arrow = new GeneralPath();
+        arrow.moveTo(0, 0);
+        arrow.lineTo(-height, base / 2.0f);
+        arrow.lineTo(-(height - notch), 0);
+        arrow.lineTo(-height, -base / 2.0f);
+        arrow.lineTo(0, 0);
+        return arrow;
+    }
+
+    /**
+     * Elements of a diagram indexed by their painted bounds.
+     */
+    public static final class Scene {
+        private final Layout<Node, Edge> layout;
+        private final List<Item> items = new ArrayList<Item>(); // painting order
+        private final BoundsQuadtree<Item> index;
+
+        private Scene(Layout<Node, Edge> layout, Rectangle2D area) {
+            this.layout = layout;
+            this.index = new BoundsQuadtree<Item>(area);
+        }
+
+        private void add(Item item, Rectangle2D bounds) {
+            items.add(item);
+            index.put(item, bounds);
+        }
+
+        private List<Item> items(Rectangle2D area) {
+            if (area == null) {
+                return items;
+            }
+            final List<Item> found = index.query(area);
+            Collections.sort(found);
+            return found;
+        }
+    }
+
+    // an edge with its label box or a node with its label
+    private static final class Item implements Comparable<Item> {
+        private final int order;
+        private final Edge edge;
+        private final Node node;
+        private final String label;
+        private final Rectangle2D labelBox;
+
+        private Item(int order, Edge edge, Node node, String label, Rectangle2D labelBox) {
+            this.order = order;
+            this.edge = edge;
+            this.node = node;
+            this.label = label;
+            this.labelBox = labelBox;
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+}
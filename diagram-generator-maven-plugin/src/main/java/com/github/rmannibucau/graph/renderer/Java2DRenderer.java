@@ -0,0 +1,182 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.DiagramGeneratorMojo;
+import com.github.rmannibucau.concurrent.RasterMemoryLimiter;
+import com.github.rmannibucau.concurrent.RasterPool;
+import com.github.rmannibucau.graph.transformer.VertexShapeTransformer;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import org.apache.maven.plugin.logging.Log;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Renders the pictures of the viewer renderer with a {@link Java2DPainter}:
+ * no Swing component is created so it runs headless and doesn't pay the
+ * initialization of the viewer.
+ *
+ * Big PNG pictures are painted by horizontal strips streamed to a
+ * {@link PngRowWriter} so the memory is bounded by the strip and not by
+ * the picture. The pictures are painted on a white background so the png
+ * is opaque (RGB) whether it is tiled or not.
+ *
+ * The formats share the layout and, when not tiled, the painted picture:
+ * only their encoders run once per format, concurrently. A tiled png is
+ * written first since it waits for strip memory the picture would hold.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class Java2DRenderer implements DiagramRenderer {
+    public static final int DEFAULT_TILE_HEIGHT = 256;
+    private static final long AUTOMATIC_TILING_BYTES = 64L * 1024 * 1024; // a 4096x4096 picture
+
+    private final DiagramGeneratorMojo configuration;
+    private final Log log;
+    private final RasterMemoryLimiter limiter;
+    private final RasterPool pool;
+    private final ExecutorService layoutExecutor;
+    private final ExecutorService encoderExecutor;
+
+    public Java2DRenderer(DiagramGeneratorMojo configuration, Log log, RasterMemoryLimiter limiter, RasterPool pool,
+                          ExecutorService layoutExecutor, ExecutorService encoderExecutor) {
+        this.configuration = configuration;
+        this.log = log;
+        this.limiter = limiter;
+        this.pool = pool;
+        this.layoutExecutor = layoutExecutor;
+        this.encoderExecutor = encoderExecutor;
+    }
+
+    @Override
+    public void render(final Diagram diagram, int width, int height, List<OutputFormat> formats, final File output) {
+        final Dimension outputSize = new Dimension(width, height);
+        final VertexShapeTransformer shapes = new VertexShapeTransformer(Java2DPainter.metrics(Java2DPainter.MEASURE_FONT));
+        final AbstractLayout<Node, Edge> layout = DiagramLayouts.layout(configuration, log, layoutExecutor, diagram,
+                outputSize, shapes, configuration.getAdjust(), output);
+
+        final double factor = RasterImages.factor(log, layout.getSize(), outputSize);
+        final Dimension size = RasterImages.scale(layout.getSize(), factor);
+        final List<Callable<Void>> tiled = new ArrayList<Callable<Void>>(formats.size());
+        final List<OutputFormat> pictureFormats = new ArrayList<OutputFormat>(formats.size());
+        for (OutputFormat format : formats) {
+            final int tileHeight = tileHeight(size, format);
+            if (tileHeight > 0) {
+                tiled.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        renderTiles(diagram.getName(), layout, shapes, factor, size, tileHeight, output);
+                        return null;
+                    }
+                });
+            } else {
+                pictureFormats.add(format);
+            }
+        }
+        if (!tiled.isEmpty()) { // they take strip memory, done before holding the memory of the whole picture
+            Encoders.run(encoderExecutor, tiled);
+        }
+        if (pictureFormats.isEmpty()) {
+            return;
+        }
+
+        final int acquired = limiter.acquire(pool.bytes(size.width, size.height));
+        final BufferedImage bi = pool.borrow(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        try {
+            final Graphics2D g = RasterImages.createGraphics(bi);
+            try {
+                g.scale(factor, factor);
+                new Java2DPainter(shapes).paint(g, layout);
+            } finally {
+                g.dispose();
+            }
+            final List<Callable<Void>> encoders = new ArrayList<Callable<Void>>(pictureFormats.size());
+            for (final OutputFormat format : pictureFormats) { // the encoders only read the picture
+                encoders.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        RasterImages.write(diagram.getName(), format == OutputFormat.PNG ? RasterImages.opaque(bi) : bi,
+                                format, output, compression(), layoutExecutor, pool);
+                        return null;
+                    }
+                });
+            }
+            Encoders.run(encoderExecutor, encoders);
+        } finally {
+            pool.release(bi);
+            limiter.release(acquired);
+        }
+    }
+
+    private PngCompression compression() {
+        return PngCompression.valueOf(configuration.getPngCompression().toUpperCase());
+    }
+
+    private int tileHeight(Dimension size, OutputFormat format) {
+        final int configured = configuration.getTileHeight();
+        if (format != OutputFormat.PNG || configured < 0) {
+            return 0;
+        }
+        if (configured > 0) {
+            return configured;
+        }
+        if (RasterMemoryLimiter.argbBytes(size.width, size.height) > AUTOMATIC_TILING_BYTES) {
+            return DEFAULT_TILE_HEIGHT;
+        }
+        return 0;
+    }
+
+    // paints the picture strip by strip, each strip is encoded before painting the next one
+    // and only paints the elements crossing it
+    private void renderTiles(String name, AbstractLayout<Node, Edge> layout, VertexShapeTransformer shapes,
+                             double factor, Dimension size, int tileHeight, File output) {
+        final int width = size.width;
+        final int height = size.height;
+        final int stripHeight = Math.min(tileHeight, height);
+        final Java2DPainter painter = new Java2DPainter(shapes);
+        final Java2DPainter.Scene scene = painter.scene(layout); // labels placed once for all the strips
+
+        final int acquired = limiter.acquire(pool.bytes(width, stripHeight));
+        final BufferedImage strip = pool.borrow(width, stripHeight, BufferedImage.TYPE_INT_RGB);
+        OutputStream os = null;
+        try {
+            os = RasterImages.open(new File(output, name + "." + OutputFormat.PNG.getExtension()));
+            final PngRowWriter writer = new PngRowWriter(os, width, height, false, compression(), layoutExecutor, pool);
+            for (int y = 0; y < height; y += stripHeight) {
+                final Graphics2D g = RasterImages.createGraphics(strip);
+                try {
+                    g.translate(0, -y);
+                    g.scale(factor, factor);
+                    painter.paint(g, scene, new Rectangle2D.Double(0, y / factor, width / factor, stripHeight / factor));
+                } finally {
+                    g.dispose();
+                }
+                writer.write(strip, Math.min(stripHeight, height - y));
+            }
+            writer.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("can't save the diagram", e);
+        } finally {
+            pool.release(strip);
+            limiter.release(acquired);
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    throw new RuntimeException("can't close diagram", e);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.github.rmannibucau.graph.renderer;
 
 public enum OutputFormat {
-  PNG, JPG, SVG
+  PNG, JPG, SVG, SVGZ; // svg formats are only supported by the batik renderer
+
+  public String getExtension() {
+    return name().toLowerCase();
+  }
 }
@@ -0,0 +1,30 @@
+package com.github.rmannibucau.graph.renderer;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compression levels of the png pictures (diagram.pngCompression).
+ *
+ * @author Romain Manni-Bucau
+ */
+public enum PngCompression {
+    FAST(Deflater.BEST_SPEED, 0),
+    BALANCED(Deflater.DEFAULT_COMPRESSION, 2),
+    SMALL(Deflater.BEST_COMPRESSION, 3);
+
+    private final int level;
+    private final int zlibLevel; // FLEVEL of the zlib header
+
+    PngCompression(int level, int zlibLevel) {
+        this.level = level;
+        this.zlibLevel = zlibLevel;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getZlibLevel() {
+        return zlibLevel;
+    }
+}
@@ -0,0 +1,420 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.concurrent.RasterPool;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a PNG row by row: the picture is given by strips and only the
+ * previous row is kept (for filtering) so the memory doesn't depend on the
+ * height of the picture.
+ *
+ * Each row uses the filter with the smallest sum of absolute differences
+ * (PNG specification heuristic). The filtered rows are cut in blocks of
+ * {@link #BLOCK_SIZE} bytes deflated concurrently when an executor is
+ * given (like pigz): a block is primed with the end of the previous one
+ * as dictionary and ends with a sync flush so the raw deflate streams
+ * follow each other in a single zlib stream. Sync flush needs java 7, on
+ * java 6 or without executor a single deflater compresses the rows.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class PngRowWriter {
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int SYNC_FLUSH = 2; // Deflater.SYNC_FLUSH
+    private static final Method SYNC_DEFLATE = syncDeflate();
+
+    private final OutputStream output;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final int level;
+    private final ExecutorService executor;
+    private final int window;
+
+    private final int[] pixels;
+    private byte[] previous;
+    private byte[] current;
+    private final byte[][] filtered = new byte[5][];
+    private int rows;
+
+    private final ChunkOutputStream idat;
+    private final Adler32 adler = new Adler32();
+    private final Deflater deflater; // serial mode only
+    private final byte[] deflated = new byte[CHUNK_SIZE];
+    private final RasterPool pool;
+    private byte[] block;
+    private int blockSize;
+    private byte[] dictionary;
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+    private final LinkedList<byte[]> pendingBlocks = new LinkedList<byte[]>();
+
+    public PngRowWriter(OutputStream output, int width, int height) throws IOException {
+        this(output, width, height, false, PngCompression.BALANCED, null, null);
+    }
+
+    /**
+     * @param alpha true to keep the alpha channel (RGBA), false for opaque pictures (RGB).
+     * @param executor pool compressing the blocks, null to compress in the calling thread.
+     * @param pool where the blocks are borrowed from, null to allocate them.
+     */
+    public PngRowWriter(OutputStream output, int width, int height, boolean alpha,
+                        PngCompression compression, ExecutorService executor, RasterPool pool) throws IOException {
+        this.output = output;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = alpha ? 4 : 3;
+        this.level = compression.getLevel();
+        this.executor = SYNC_DEFLATE != null ? executor : null;
+        this.window = 2 * Runtime.getRuntime().availableProcessors();
+        this.pool = pool;
+        this.block = newBlock();
+
+        pixels = new int[width];
+        previous = new byte[width * bytesPerPixel];
+        current = new byte[width * bytesPerPixel];
+        for (int i = 0; i < filtered.length; i++) {
+            filtered[i] = new byte[1 + width * bytesPerPixel];
+            filtered[i][0] = (byte) i;
+        }
+
+        output.write(SIGNATURE);
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        final DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8); // bit depth
+        data.writeByte(alpha ? 6 : 2); // truecolor (with alpha)
+        data.writeByte(0); // deflate
+        data.writeByte(0); // adaptive filtering
+        data.writeByte(0); // no interlace
+        chunk(output, "IHDR", header.toByteArray(), header.size());
+
+        idat = new ChunkOutputStream(output, "IDAT");
+        idat.write(0x78); // deflate, 32K window
+        final int flags = compression.getZlibLevel() << 6;
+        idat.write(flags + 31 - (0x78 * 256 + flags) % 31);
+        deflater = this.executor == null ? new Deflater(level, true) : null;
+    }
+
+    /**
+     * Writes the first rows of a strip, its width must be the one of the picture.
+     */
+    public void write(BufferedImage strip, int count) throws IOException {
+        if (rows + count > height) {
+            throw new IllegalArgumentException("picture has only " + height + " rows");
+        }
+        for (int r = 0; r < count; r++) {
+            strip.getRGB(0, r, width, 1, pixels, 0, width);
+            for (int x = 0, i = 0; x < width; x++) {
+                final int argb = pixels[x];
+                current[i++] = (byte) (argb >> 16);
+                current[i++] = (byte) (argb >> 8);
+                current[i++] = (byte) argb;
+                if (bytesPerPixel == 4) {
+                    current[i++] = (byte) (argb >>> 24);
+                }
+            }
+            final byte[] row = filter();
+            adler.update(row);
+            append(row);
+
+            final byte[] swap = previous;
+            previous = current;
+            current = swap;
+            rows++;
+        }
+    }
+
+    /**
+     * Ends the picture, all its rows must have been written. The output is not closed.
+     */
+    public void finish() throws IOException {
+        if (rows != height) {
+            throw new IllegalStateException("only " + rows + " rows of " + height + " were written");
+        }
+        try {
+            if (executor == null) {
+                deflater.setInput(block, 0, blockSize);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    idat.write(deflated, 0, deflater.deflate(deflated));
+                }
+            } else {
+                submit(true);
+                while (!pending.isEmpty()) {
+                    idat.write(take());
+                }
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            for (Future<byte[]> future : pending) { // failure, don't compress for nothing
+                future.cancel(true);
+            }
+            if (executor == null) {
+                releaseBlock(block);
+            }
+        }
+
+        final int checksum = (int) adler.getValue();
+        idat.write(checksum >>> 24);
+        idat.write(checksum >>> 16);
+        idat.write(checksum >>> 8);
+        idat.write(checksum);
+        idat.flush();
+        chunk(output, "IEND", new byte[0], 0);
+        output.flush();
+    }
+
+    private void append(byte[] row) throws IOException {
+        int offset = 0;
+        while (offset < row.length) {
+            if (blockSize == block.length) {
+                if (executor == null) {
+                    deflater.setInput(block, 0, blockSize);
+                    while (!deflater.needsInput()) {
+                        idat.write(deflated, 0, deflater.deflate(deflated));
+                    }
+                } else {
+                    submit(false);
+                }
+                blockSize = 0;
+            }
+            final int n = Math.min(row.length - offset, block.length - blockSize);
+            System.arraycopy(row, offset, block, blockSize, n);
+            blockSize += n;
+            offset += n;
+        }
+    }
+
+    // the block is given to the task, the next one uses a new array
+    private void submit(boolean last) throws IOException {
+        if (pending.size() >= window) { // bounds the memory, the output is written in order
+            idat.write(take());
+        }
+        pending.add(executor.submit(new BlockDeflater(block, blockSize, dictionary, level, last)));
+        pendingBlocks.add(block);
+        if (!last) {
+            dictionary = Arrays.copyOfRange(block, Math.max(0, blockSize - DICTIONARY_SIZE), blockSize);
+            block = newBlock();
+        }
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            final byte[] deflatedBlock = pending.removeFirst().get();
+            releaseBlock(pendingBlocks.removeFirst());
+            return deflatedBlock;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while compressing the picture");
+        } catch (ExecutionException e) {
+            final IOException error = new IOException("can't compress the picture");
+            error.initCause(e.getCause());
+            throw error;
+        }
+    }
+
+    private byte[] newBlock() {
+        return pool != null ? pool.borrow(BLOCK_SIZE) : new byte[BLOCK_SIZE];
+    }
+
+    private void releaseBlock(byte[] released) {
+        if (pool != null) {
+            pool.release(released);
+        }
+    }
+
+    private byte[] filter() {
+        final int length = current.length;
+        final byte[] none = filtered[0];
+        final byte[] sub = filtered[1];
+        final byte[] up = filtered[2];
+        final byte[] average = filtered[3];
+        final byte[] paeth = filtered[4];
+        final long[] sums = new long[5];
+        for (int i = 0; i < length; i++) {
+            final int x = current[i] & 0xff;
+            final int a = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xff : 0;
+            final int b = rows > 0 ? previous[i] & 0xff : 0;
+            final int c = rows > 0 && i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xff : 0;
+
+            none[i + 1] = (byte) x;
+            sub[i + 1] = (byte) (x - a);
+            up[i + 1] = (byte) (x - b);
+            average[i + 1] = (byte) (x - ((a + b) >> 1));
+            paeth[i + 1] = (byte) (x - paeth(a, b, c));
+
+            for (int f = 0; f < 5; f++) {
+                sums[f] += Math.abs((int) filtered[f][i + 1]);
+            }
+        }
+
+        int best = 0;
+        for (int f = 1; f < 5; f++) {
+            if (sums[f] < sums[best]) {
+                best = f;
+            }
+        }
+        return filtered[best];
+    }
+
+    private static int paeth(int a, int b, int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        if (pb <= pc) {
+            return b;
+        }
+        return c;
+    }
+
+    private static void chunk(OutputStream output, String type, byte[] data, int length) throws IOException {
+        final byte[] typeBytes = type.getBytes("US-ASCII");
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        final DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+        out.flush();
+    }
+
+    private static Method syncDeflate() {
+        try {
+            return Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+        } catch (NoSuchMethodException e) { // java 6
+            return null;
+        }
+    }
+
+    // one block as a raw deflate stream, byte aligned by the sync flush unless it is the last one
+    private static class BlockDeflater implements Callable<byte[]> {
+        private final byte[] block;
+        private final int size;
+        private final byte[] dictionary;
+        private final int level;
+        private final boolean last;
+
+        private BlockDeflater(byte[] block, int size, byte[] dictionary, int level, boolean last) {
+            this.block = block;
+            this.size = size;
+            this.dictionary = dictionary;
+            this.level = level;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() throws Exception {
+            final Deflater deflater = new Deflater(level, true);
+            try {
+                if (dictionary != null) {
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(block, 0, size);
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(size / 2 + 64);
+                final byte[] buffer = new byte[CHUNK_SIZE];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        out.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                } else {
+                    int n;
+                    do {
+                        n = syncDeflate(deflater, buffer);
+                        out.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private static int syncDeflate(Deflater deflater, byte[] buffer) throws IOException {
+            try {
+                return (Integer) SYNC_DEFLATE.invoke(deflater, buffer, 0, buffer.length, SYNC_FLUSH);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    // buffers the compressed bytes and writes them as chunks of a type
+    private static class ChunkOutputStream extends OutputStream {
+        private final OutputStream output;
+        private final String type;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size;
+
+        private ChunkOutputStream(OutputStream output, String type) {
+            this.output = output;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == buffer.length) {
+                flushChunk();
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == buffer.length) {
+                    flushChunk();
+                }
+                final int n = Math.min(len, buffer.length - size);
+                System.arraycopy(b, off, buffer, size, n);
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (size > 0) {
+                chunk(output, type, buffer, size);
+                size = 0;
+            }
+        }
+    }
+}
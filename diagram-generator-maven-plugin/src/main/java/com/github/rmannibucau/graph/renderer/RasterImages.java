@@ -0,0 +1,120 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.concurrent.RasterPool;
+import org.apache.maven.plugin.logging.Log;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DirectColorModel;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Picture handling shared by the raster renderers: a diagram is painted
+ * through a scaled graphics directly at the requested size.
+ *
+ * @author Romain Manni-Bucau
+ */
+final class RasterImages {
+    private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+
+    private RasterImages() {
+        // no-op
+    }
+
+    /**
+     * @return a white picture and its graphics, to dispose once painted.
+     */
+    static Graphics2D createGraphics(BufferedImage bi) {
+        bi.getGraphics().fillRect(0, 0, bi.getWidth(), bi.getHeight());
+        return createTransparentGraphics(bi);
+    }
+
+    /**
+     * @return the graphics of a picture keeping its pixels, to dispose once painted.
+     */
+    static Graphics2D createTransparentGraphics(BufferedImage bi) {
+        Graphics2D g = bi.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        return g;
+    }
+
+    /**
+     * @return the factor fitting the painted picture in the requested size, 1 if it is already the case.
+     */
+    static double factor(Log log, Dimension currentSize, Dimension desiredSize) {
+        if (currentSize.equals(desiredSize)) {
+            return 1;
+        }
+        double xFactor = desiredSize.width * 1. / currentSize.width;
+        double yFactor = desiredSize.height * 1. / currentSize.height;
+        double factor = Math.min(xFactor, yFactor);
+        log.info("optimal size is (" + currentSize.width + ", " + currentSize.height + ")");
+        log.info("scaling with a factor of " + factor);
+        return factor;
+    }
+
+    /**
+     * @return the size of the picture painted with a scale factor, rounded since
+     *         a fitted side can be a hair below the requested one (639.99...).
+     */
+    static Dimension scale(Dimension size, double factor) {
+        return new Dimension(Math.max(1, (int) Math.round(size.width * factor)), Math.max(1, (int) Math.round(size.height * factor)));
+    }
+
+    static void write(String name, BufferedImage bi, OutputFormat format, File output,
+                      PngCompression compression, ExecutorService executor, RasterPool pool) {
+        OutputStream os = null;
+        try {
+            os = open(new File(output, name + "." + format.getExtension()));
+            if (format == OutputFormat.PNG) {
+                final PngRowWriter writer = new PngRowWriter(os, bi.getWidth(), bi.getHeight(),
+                        bi.getColorModel().hasAlpha(), compression, executor, pool);
+                writer.write(bi, bi.getHeight());
+                writer.finish();
+            } else if (!ImageIO.write(format == OutputFormat.JPG ? opaque(bi) : bi, format.getExtension(), os)) {
+                throw new RuntimeException("can't save picture " + name + "." + format.getExtension());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("can't save the diagram", e);
+        } finally {
+            if (os != null) {
+                try {
+                    os.flush();
+                    os.close();
+                } catch (IOException e) {
+                    throw new RuntimeException("can't close diagram", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the picture without its alpha channel (jpg has none), the pixels are shared and not copied.
+     */
+    static BufferedImage opaque(BufferedImage bi) {
+        if (bi.getType() != BufferedImage.TYPE_INT_ARGB) {
+            return bi;
+        }
+        return new BufferedImage(new DirectColorModel(24, 0xff0000, 0xff00, 0xff),
+                bi.getRaster().createWritableChild(0, 0, bi.getWidth(), bi.getHeight(), 0, 0, new int[] { 0, 1, 2 }),
+                false, null);
+    }
+
+    /**
+     * @return a buffered stream writing to the channel of the file.
+     */
+    static OutputStream open(File file) throws IOException {
+        return new BufferedOutputStream(Channels.newOutputStream(new FileOutputStream(file).getChannel()), OUTPUT_BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,222 @@
+package com.github.rmannibucau.graph.renderer;
+
+import javax.imageio.ImageIO;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the SVG of {@link BatikRenderer} element by element while the
+ * diagram is walked instead of building the DOM of an
+ * {@link org.apache.batik.svggen.SVGGraphics2D} first: the memory doesn't
+ * depend on the size of the diagram.
+ *
+ * Repeated things are defined once in a leading defs element: the styles
+ * are CSS classes, the arrow head is a marker ending the edge lines, each
+ * distinct node box and each distinct icon (embedded png) is a symbol the
+ * nodes use. The boxes and the icons are given up front for that.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class SvgStreamWriter implements DiagramCanvas {
+    private static final String SVG_NS = "http://www.w3.org/2000/svg";
+    private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+    private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+    private static final String DOCTYPE = "<!DOCTYPE svg PUBLIC '-//W3C//DTD SVG 1.0//EN' 'http://www.w3.org/TR/2001/REC-SVG-20010904/DTD/svg10.dtd'>";
+    private static final String ARROW_ID = "arrow";
+    private static final String STYLES = "\n"
+            + "svg { fill: black; stroke: black; stroke-width: 1; stroke-linecap: square; stroke-miterlimit: 10; "
+            + "font-family: 'Dialog'; font-size: 12px; }\n"
+            + ".node { fill: lime; }\n"
+            + ".edge { fill: none; marker-end: url(#" + ARROW_ID + "); }\n"
+            + ".head, text { stroke: none; }\n";
+
+    private final Writer writer;
+    private final XMLStreamWriter xml;
+    private final Map<String, String> boxes = new HashMap<String, String>(); // size -> symbol id
+    private final Map<String, String> icons = new HashMap<String, String>(); // icon key -> symbol id
+
+    /**
+     * @param boxes sizes of the node boxes drawn with {@link #box(int, int, int, int)}.
+     * @param icons icons by key drawn with {@link #icon(String, BufferedImage, int, int)}.
+     */
+    public SvgStreamWriter(OutputStream out, int width, int height,
+                           Collection<Dimension> boxes, Map<String, BufferedImage> icons) throws IOException {
+        writer = new OutputStreamWriter(out, "UTF-8");
+        try {
+            xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeDTD(DOCTYPE);
+            xml.writeCharacters("\n");
+            xml.writeStartElement("svg");
+            xml.writeDefaultNamespace(SVG_NS);
+            xml.writeNamespace("xlink", XLINK_NS);
+            xml.writeAttribute("width", Integer.toString(width));
+            xml.writeAttribute("height", Integer.toString(height));
+            xml.writeAttribute("xml", XML_NS, "space", "preserve"); // inherited by the texts
+            xml.writeCharacters("\n");
+            writeDefs(boxes, icons);
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void box(int x, int y, int width, int height) {
+        use(boxes.get(width + "x" + height), "box of " + width + "x" + height, x, y);
+    }
+
+    @Override
+    public void icon(String key, BufferedImage icon, int x, int y) {
+        use(icons.get(key), "icon " + key, x, y);
+    }
+
+    @Override
+    public void text(String text, float x, float y) {
+        try {
+            xml.writeStartElement("text");
+            xml.writeAttribute("x", number(x));
+            xml.writeAttribute("y", number(y));
+            xml.writeCharacters(text);
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void arrow(int sourceX, int sourceY, int targetX, int targetY) {
+        try {
+            xml.writeEmptyElement("line");
+            xml.writeAttribute("class", "edge");
+            xml.writeAttribute("x1", Integer.toString(sourceX));
+            xml.writeAttribute("y1", Integer.toString(sourceY));
+            xml.writeAttribute("x2", Integer.toString(targetX));
+            xml.writeAttribute("y2", Integer.toString(targetY));
+            xml.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void finish() throws IOException {
+        try {
+            xml.writeEndElement(); // svg
+            xml.writeEndDocument();
+            xml.flush();
+            xml.close();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void use(String id, String symbol, int x, int y) {
+        if (id == null) {
+            throw new IllegalArgumentException("undeclared " + symbol);
+        }
+        try {
+            xml.writeEmptyElement("use");
+            xml.writeAttribute("xlink", XLINK_NS, "href", "#" + id);
+            xml.writeAttribute("x", Integer.toString(x));
+            xml.writeAttribute("y", Integer.toString(y));
+            xml.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeDefs(Collection<Dimension> boxSizes, Map<String, BufferedImage> iconImages) throws XMLStreamException, IOException {
+        xml.writeStartElement("defs");
+        xml.writeCharacters("\n");
+
+        xml.writeStartElement("style");
+        xml.writeAttribute("type", "text/css");
+        xml.writeCData(STYLES);
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+
+        // head of BatikRenderer: 10 pixels wide and long, its middle at the end of the line
+        xml.writeStartElement("marker");
+        xml.writeAttribute("id", ARROW_ID);
+        xml.writeAttribute("markerUnits", "userSpaceOnUse");
+        xml.writeAttribute("markerWidth", "10");
+        xml.writeAttribute("markerHeight", "10");
+        xml.writeAttribute("viewBox", "0 0 10 10");
+        xml.writeAttribute("refX", "5");
+        xml.writeAttribute("refY", "5");
+        xml.writeAttribute("orient", "auto");
+        xml.writeEmptyElement("path");
+        xml.writeAttribute("class", "head");
+        xml.writeAttribute("d", "M10 5L0 0L0 10z");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+
+        for (Dimension size : boxSizes) {
+            final String key = size.width + "x" + size.height;
+            if (boxes.containsKey(key)) {
+                continue;
+            }
+            final String id = "box" + boxes.size();
+            boxes.put(key, id);
+            startSymbol(id);
+            xml.writeEmptyElement("rect");
+            xml.writeAttribute("class", "node");
+            xml.writeAttribute("width", Integer.toString(size.width));
+            xml.writeAttribute("height", Integer.toString(size.height));
+            endSymbol();
+        }
+
+        for (Map.Entry<String, BufferedImage> icon : iconImages.entrySet()) {
+            final String id = "icon" + icons.size();
+            icons.put(icon.getKey(), id);
+            startSymbol(id);
+            xml.writeEmptyElement("image");
+            xml.writeAttribute("width", Integer.toString(icon.getValue().getWidth()));
+            xml.writeAttribute("height", Integer.toString(icon.getValue().getHeight()));
+            xml.writeAttribute("xlink", XLINK_NS, "href", "data:image/png;base64," + png(icon.getValue()));
+            endSymbol();
+        }
+
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    private void startSymbol(String id) throws XMLStreamException {
+        xml.writeStartElement("symbol");
+        xml.writeAttribute("id", id);
+        xml.writeAttribute("overflow", "visible"); // half of the border of a box is outside of it
+    }
+
+    private void endSymbol() throws XMLStreamException {
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    private static String png(BufferedImage image) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return DatatypeConverter.printBase64Binary(out.toByteArray());
+    }
+
+    private static String number(double value) {
+        final double rounded = Math.round(value * 100) / 100.;
+        if (rounded == (long) rounded) {
+            return Long.toString((long) rounded);
+        }
+        return Double.toString(rounded);
+    }
+}
@@ -1,18 +1,34 @@
 package com.github.rmannibucau.graph.transformer;
 
+import com.github.rmannibucau.loader.spi.graph.IconCache;
 import com.github.rmannibucau.loader.spi.graph.Node;
 import org.apache.commons.collections15.Transformer;
 
 import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
+ * Resolves the icon keys of the nodes for the JUNG viewer, one Swing icon per key.
+ *
  * @author Romain Manni-Bucau
  */
 public class VertexIconTransformer implements Transformer<Node, Icon> {
+    private final Map<String, Icon> icons = new HashMap<String, Icon>();
+
     @Override public Icon transform(Node v) {
-        if (v.getIcon() != null) {
-            return v.getIcon();
+        final BufferedImage image = IconCache.get(v.getIconKey());
+        if (image == null) {
+            return null;
+        }
+
+        Icon icon = icons.get(v.getIconKey());
+        if (icon == null) {
+            icon = new ImageIcon(image, v.getIconKey());
+            icons.put(v.getIconKey(), icon);
         }
-        return null;
+        return icon;
     }
 }
@@ -1,5 +1,6 @@
 package com.github.rmannibucau.graph.transformer;
 
+import com.github.rmannibucau.loader.spi.graph.IconCache;
 import com.github.rmannibucau.loader.spi.graph.Node;
 import edu.uci.ics.jung.visualization.decorators.ToStringLabeller;
 
@@ -8,7 +9,7 @@ import edu.uci.ics.jung.visualization.decorators.ToStringLabeller;
  */
 public class VertexLabelTransformer extends ToStringLabeller<Node> {
     public String transform(Node node) {
-        if (node.getIcon() != null) {
+        if (IconCache.get(node.getIconKey()) != null) {
             return null;
         }
         return node.getText();
@@ -1,44 +1,116 @@
 package com.github.rmannibucau.graph.transformer;
 
+import com.github.rmannibucau.loader.spi.graph.IconCache;
 import com.github.rmannibucau.loader.spi.graph.Node;
 import org.apache.commons.collections15.Transformer;
 
-import javax.swing.Icon;
+import java.awt.Dimension;
 import java.awt.FontMetrics;
-import java.awt.Rectangle;
 import java.awt.Shape;
-import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
+ * Measures the nodes once per diagram: the layout and the renderers all
+ * read the same cached size and centred shape.
+ *
+ * An entry is recomputed when the text or the icon of its node changed.
+ *
  * @author Romain Manni-Bucau
  */
 public class VertexShapeTransformer implements Transformer<Node, Shape> {
     private static final int X_MARGIN = 4;
     private static final int Y_MARGIN = 2;
 
-    private FontMetrics metrics;
+    private final Map<Node, Geometry> geometries = new HashMap<Node, Geometry>();
+    private final FontMetrics metrics;
+    private final Dimension fixedSize;
 
     public VertexShapeTransformer(FontMetrics f) {
         metrics = f;
+        fixedSize = null;
+    }
+
+    /**
+     * @param size the size of all the nodes, text and icons are ignored.
+     */
+    public VertexShapeTransformer(Dimension size) {
+        metrics = null;
+        fixedSize = new Dimension(size);
     }
 
     @Override public Shape transform(Node i) {
+        return getGeometry(i).getShape();
+    }
+
+    public Geometry getGeometry(Node node) {
+        Geometry geometry = geometries.get(node);
+        if (geometry == null || !geometry.isValid(node)) {
+            geometry = measure(node);
+            geometries.put(node, geometry);
+        }
+        return geometry;
+    }
+
+    public void invalidate(Node node) {
+        geometries.remove(node);
+    }
+
+    private Geometry measure(Node i) {
+        if (fixedSize != null) {
+            return new Geometry(i, fixedSize.width, fixedSize.height);
+        }
+
         int w;
         int h;
-        Icon icon = i.getIcon();
+        BufferedImage icon = IconCache.get(i.getIconKey());
         if (icon == null) {
             w = metrics.stringWidth(i.getText());
             h = metrics.getHeight();
         } else {
-            w = icon.getIconWidth();
-            h = icon.getIconHeight();
+            w = icon.getWidth();
+            h = icon.getHeight();
         }
 
         h += Y_MARGIN;
         w += X_MARGIN;
+        return new Geometry(i, w, h);
+    }
 
-        // centering
-        AffineTransform transform = AffineTransform.getTranslateInstance(-w / 2.0, -h / 2.0);
-        return transform.createTransformedShape(new Rectangle(0, 0, w, h));
+    public static class Geometry {
+        private final String text;
+        private final String iconKey;
+        private final int width;
+        private final int height;
+        private final Shape shape;
+
+        private Geometry(Node node, int width, int height) {
+            this.text = node.getText();
+            this.iconKey = node.getIconKey();
+            this.width = width;
+            this.height = height;
+
+            // centering
+            shape = new Rectangle2D.Double(-width / 2.0, -height / 2.0, width, height);
+        }
+
+        private boolean isValid(Node node) {
+            return (iconKey == null ? node.getIconKey() == null : iconKey.equals(node.getIconKey()))
+                    && (text == null ? node.getText() == null : text.equals(node.getText()));
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public Shape getShape() {
+            return shape;
+        }
     }
 }
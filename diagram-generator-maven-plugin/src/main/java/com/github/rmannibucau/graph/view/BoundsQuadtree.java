@@ -0,0 +1,146 @@
+package com.github.rmannibucau.graph.view;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Quadtree over the bounds of items: an item is stored in the deepest cell
+ * fully containing its bounds so a query only visits the cells crossing
+ * the queried area, O(log n) for a small area instead of O(n).
+ *
+ * Items can be moved ({@link #put(Object, Rectangle2D)} again) or removed,
+ * bounds outside the area of the tree are kept in its root.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class BoundsQuadtree<T> {
+    private static final int MAX_ITEMS = 8; // per cell before splitting it
+    private static final int MAX_DEPTH = 16;
+
+    private final Cell root;
+    private final Map<T, Cell> cells = new HashMap<T, Cell>();
+    private final Map<T, Rectangle2D> bounds = new HashMap<T, Rectangle2D>();
+
+    public BoundsQuadtree(Rectangle2D area) {
+        root = new Cell(area, 0);
+    }
+
+    public void put(T item, Rectangle2D itemBounds) {
+        remove(item);
+        final Rectangle2D copy = (Rectangle2D) itemBounds.clone();
+        bounds.put(item, copy);
+        root.insert(item, copy);
+    }
+
+    public void remove(T item) {
+        final Cell cell = cells.remove(item);
+        if (cell != null) {
+            cell.items.remove(item);
+            bounds.remove(item);
+        }
+    }
+
+    /**
+     * @return the bounds of an item, null if it is not in the tree.
+     */
+    public Rectangle2D getBounds(T item) {
+        return bounds.get(item);
+    }
+
+    public int size() {
+        return bounds.size();
+    }
+
+    /**
+     * @return the items whose bounds intersect the area.
+     */
+    public List<T> query(Rectangle2D area) {
+        final List<T> found = new ArrayList<T>();
+        root.query(area, found);
+        return found;
+    }
+
+    /**
+     * @return the items whose bounds contain the point.
+     */
+    public List<T> query(double x, double y) {
+        final List<T> found = new ArrayList<T>();
+        for (T item : query(new Rectangle2D.Double(x, y, 0, 0))) {
+            if (bounds.get(item).contains(x, y)) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    private class Cell {
+        private final Rectangle2D area;
+        private final int depth;
+        private final List<T> items = new ArrayList<T>(2);
+        private List<Cell> children;
+
+        private Cell(Rectangle2D area, int depth) {
+            this.area = area;
+            this.depth = depth;
+        }
+
+        private void insert(T item, Rectangle2D itemBounds) {
+            if (children == null && items.size() >= MAX_ITEMS && depth < MAX_DEPTH) {
+                split();
+            }
+            if (children != null) {
+                for (Cell child : children) {
+                    if (child.area.contains(itemBounds)) {
+                        child.insert(item, itemBounds);
+                        return;
+                    }
+                }
+            }
+            items.add(item);
+            cells.put(item, this);
+        }
+
+        private void split() {
+            final double x = area.getX();
+            final double y = area.getY();
+            final double w = area.getWidth() / 2;
+            final double h = area.getHeight() / 2;
+            children = new ArrayList<Cell>(4);
+            children.add(new Cell(new Rectangle2D.Double(x, y, w, h), depth + 1));
+            children.add(new Cell(new Rectangle2D.Double(x + w, y, w, h), depth + 1));
+            children.add(new Cell(new Rectangle2D.Double(x, y + h, w, h), depth + 1));
+            children.add(new Cell(new Rectangle2D.Double(x + w, y + h, w, h), depth + 1));
+
+            final Collection<T> moved = new ArrayList<T>(items);
+            items.clear();
+            for (T item : moved) {
+                insert(item, bounds.get(item));
+            }
+        }
+
+        private void query(Rectangle2D queried, List<T> found) {
+            for (T item : items) {
+                if (intersects(bounds.get(item), queried)) {
+                    found.add(item);
+                }
+            }
+            if (children != null) {
+                for (Cell child : children) {
+                    if (intersects(child.area, queried)) {
+                        child.query(queried, found);
+                    }
+                }
+            }
+        }
+    }
+
+    // unlike Rectangle2D#intersects, empty rectangles (points, lines) touching the other one intersect it
+    private static boolean intersects(Rectangle2D a, Rectangle2D b) {
+        return a.getMinX() <= b.getMaxX() && b.getMinX() <= a.getMaxX()
+                && a.getMinY() <= b.getMaxY() && b.getMinY() <= a.getMaxY();
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.rmannibucau.graph.view;
+
+import com.github.rmannibucau.graph.GraphViewer;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Context;
+import edu.uci.ics.jung.visualization.picking.ShapePickSupport;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Pick support of the viewer only testing the shapes of the elements the
+ * {@link ViewIndex} finds around the mouse (or in the selection rectangle)
+ * instead of the shapes of the whole graph on each mouse event.
+ *
+ * The picking itself (shapes, closest element, pick size) is the one of JUNG,
+ * only elements as close as each other can be picked in another order.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class IndexPickSupport extends ShapePickSupport<Node, Edge> {
+    private final GraphViewer viewer;
+    private Rectangle2D candidates; // layout area of the current pick, mouse events are all in the EDT
+
+    public IndexPickSupport(GraphViewer viewer) {
+        super(viewer);
+        this.viewer = viewer;
+    }
+
+    @Override
+    public Node getVertex(Layout<Node, Edge> layout, double x, double y) {
+        candidates = area(new Rectangle2D.Double(x, y, 0, 0));
+        try {
+            return super.getVertex(layout, x, y);
+        } finally {
+            candidates = null;
+        }
+    }
+
+    @Override
+    public Collection<Node> getVertices(Layout<Node, Edge> layout, Shape rectangle) {
+        candidates = area(rectangle);
+        try {
+            return super.getVertices(layout, rectangle);
+        } finally {
+            candidates = null;
+        }
+    }
+
+    @Override
+    public Edge getEdge(Layout<Node, Edge> layout, double x, double y) {
+        candidates = area(new Rectangle2D.Double(x - pickSize / 2, y - pickSize / 2, pickSize, pickSize));
+        try {
+            return super.getEdge(layout, x, y);
+        } finally {
+            candidates = null;
+        }
+    }
+
+    @Override
+    protected Collection<Node> getFilteredVertices(Layout<Node, Edge> layout) {
+        if (candidates == null || layout != viewer.getGraphLayout()) {
+            return super.getFilteredVertices(layout);
+        }
+
+        final List<Node> nodes = viewer.getIndex().nodes(candidates);
+        if (!verticesAreFiltered()) {
+            return nodes;
+        }
+
+        final Graph<Node, Edge> graph = layout.getGraph();
+        final Collection<Node> filtered = new ArrayList<Node>(nodes.size());
+        for (Node node : nodes) {
+            if (isVertexRendered(Context.<Graph<Node, Edge>, Node>getInstance(graph, node))) {
+                filtered.add(node);
+            }
+        }
+        return filtered;
+    }
+
+    @Override
+    protected Collection<Edge> getFilteredEdges(Layout<Node, Edge> layout) {
+        if (candidates == null || layout != viewer.getGraphLayout()) {
+            return super.getFilteredEdges(layout);
+        }
+
+        final List<Edge> edges = viewer.getIndex().edges(candidates);
+        if (!edgesAreFiltered()) {
+            return edges;
+        }
+
+        final Graph<Node, Edge> graph = layout.getGraph();
+        final Collection<Edge> filtered = new ArrayList<Edge>(edges.size());
+        for (Edge edge : edges) {
+            if (isEdgeRendered(Context.<Graph<Node, Edge>, Edge>getInstance(graph, edge))) {
+                filtered.add(edge);
+            }
+        }
+        return filtered;
+    }
+
+    private Rectangle2D area(Shape screen) {
+        return viewer.getIndex().area(viewer.getRenderContext().getMultiLayerTransformer(), screen);
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.rmannibucau.graph.view;
+
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import org.apache.commons.collections15.Transformer;
+
+import java.awt.Dimension;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * Bounds of the laid out nodes and edges in layout coordinates, what the
+ * viewer needs to only paint (or pick) the elements of an area.
+ *
+ * The bounds of an edge cover its end nodes (so its arrow) or its loop.
+ * When nodes move (dragged in the viewer) {@link #update(Node)} moves them
+ * and their edges in the index.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class ViewIndex {
+    private final Layout<Node, Edge> layout;
+    private final Transformer<Node, Shape> shapes;
+    private final BoundsQuadtree<Node> nodes;
+    private final BoundsQuadtree<Edge> edges;
+    private double maxExtent; // farthest shape border from its node center
+
+    public ViewIndex(Layout<Node, Edge> layout, Transformer<Node, Shape> shapes) {
+        this.layout = layout;
+        this.shapes = shapes;
+
+        final Dimension size = layout.getSize();
+        final Rectangle2D area = size == null ? new Rectangle2D.Double(0, 0, 1, 1) : new Rectangle2D.Double(0, 0, size.width, size.height);
+        nodes = new BoundsQuadtree<Node>(area);
+        edges = new BoundsQuadtree<Edge>(area);
+
+        final Graph<Node, Edge> graph = layout.getGraph();
+        for (Node node : graph.getVertices()) {
+            nodes.put(node, nodeBounds(node));
+        }
+        for (Edge edge : graph.getEdges()) {
+            edges.put(edge, edgeBounds(edge));
+        }
+    }
+
+    public Layout<Node, Edge> getLayout() {
+        return layout;
+    }
+
+    /**
+     * @param screen an area of the viewer.
+     * @return the area in layout coordinates containing all the elements which can be painted in the screen area.
+     */
+    public Rectangle2D area(MultiLayerTransformer transformer, Shape screen) {
+        final Rectangle2D area = transformer.inverseTransform(Layer.LAYOUT, transformer.inverseTransform(Layer.VIEW, screen)).getBounds2D();
+        final double scale = transformer.getTransformer(Layer.LAYOUT).getScale();
+        if (scale < 1) { // node shapes are not scaled with the layout layer so they look bigger in layout coordinates
+            final double margin = maxExtent * (1 / scale - 1);
+            area.setRect(area.getX() - margin, area.getY() - margin, area.getWidth() + 2 * margin, area.getHeight() + 2 * margin);
+        }
+        return area;
+    }
+
+    /**
+     * @return true if the node moved since it was indexed.
+     */
+    public boolean update(Node node) {
+        final Rectangle2D current = nodeBounds(node);
+        if (current.equals(nodes.getBounds(node))) {
+            return false;
+        }
+
+        nodes.put(node, current);
+        final Graph<Node, Edge> graph = layout.getGraph();
+        for (Edge edge : graph.getIncidentEdges(node)) {
+            edges.put(edge, edgeBounds(edge));
+        }
+        return true;
+    }
+
+    public List<Node> nodes(Rectangle2D area) {
+        return nodes.query(area);
+    }
+
+    public List<Edge> edges(Rectangle2D area) {
+        return edges.query(area);
+    }
+
+    public Rectangle2D getBounds(Node node) {
+        return nodes.getBounds(node);
+    }
+
+    public Rectangle2D getBounds(Edge edge) {
+        return edges.getBounds(edge);
+    }
+
+    private Rectangle2D nodeBounds(Node node) {
+        final Point2D center = layout.transform(node);
+        final Rectangle2D shape = shapes.transform(node).getBounds2D();
+        maxExtent = Math.max(maxExtent, Math.max(Math.max(-shape.getMinX(), shape.getMaxX()), Math.max(-shape.getMinY(), shape.getMaxY())));
+        return new Rectangle2D.Double(center.getX() + shape.getX(), center.getY() + shape.getY(), shape.getWidth(), shape.getHeight());
+    }
+
+    private Rectangle2D edgeBounds(Edge edge) {
+        final Graph<Node, Edge> graph = layout.getGraph();
+        final Node source = graph.getSource(edge);
+        final Node target = graph.getDest(edge);
+        final Rectangle2D bounds = nodeBounds(source);
+        if (source.equals(target)) { // loop above the node
+            bounds.add(bounds.getMinX(), bounds.getCenterY() - bounds.getHeight());
+        } else {
+            bounds.add(nodeBounds(target));
+        }
+        return bounds;
+    }
+}
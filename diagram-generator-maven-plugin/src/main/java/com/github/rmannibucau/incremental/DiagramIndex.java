@@ -0,0 +1,61 @@
+package com.github.rmannibucau.incremental;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Fingerprints of the last generation, stored in the output directory.
+ *
+ * Keys are the generated file names associated to the fingerprint of
+ * their diagram and settings.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class DiagramIndex {
+  public static final String FILE_NAME = ".diagram-index.properties";
+
+  private final File output;
+  private final Properties previous;
+  private final Properties current = new Properties();
+
+  private DiagramIndex(File output, Properties previous) {
+    this.output = output;
+    this.previous = previous;
+  }
+
+  public static DiagramIndex load(File output) throws IOException {
+    final Properties properties = new Properties();
+    final File file = new File(output, FILE_NAME);
+    if (file.isFile()) {
+      final InputStream is = new FileInputStream(file);
+      try {
+        properties.load(is);
+      } finally {
+        is.close();
+      }
+    }
+    return new DiagramIndex(output, properties);
+  }
+
+  public synchronized boolean isUpToDate(String fileName, String fingerprint) {
+    return fingerprint.equals(previous.getProperty(fileName)) && new File(output, fileName).isFile();
+  }
+
+  public synchronized void generated(String fileName, String fingerprint) {
+    current.setProperty(fileName, fingerprint);
+  }
+
+  public synchronized void save() throws IOException {
+    final OutputStream os = new FileOutputStream(new File(output, FILE_NAME));
+    try {
+      current.store(os, "diagram-generator fingerprints");
+    } finally {
+      os.close();
+    }
+  }
+}
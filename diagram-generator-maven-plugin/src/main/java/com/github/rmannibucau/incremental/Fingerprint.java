@@ -0,0 +1,68 @@
+package com.github.rmannibucau.incremental;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-1 accumulator used to detect changes between two builds.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class Fingerprint {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final MessageDigest digest;
+  private final byte[] buffer = new byte[8192];
+
+  public Fingerprint() {
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not available", e);
+    }
+  }
+
+  public Fingerprint add(String value) {
+    try {
+      digest.update(String.valueOf(value).getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update((byte) 0); // separator, "ab" + "c" != "a" + "bc"
+    return this;
+  }
+
+  public Fingerprint add(InputStream is) throws IOException {
+    int read;
+    while ((read = is.read(buffer)) >= 0) {
+      digest.update(buffer, 0, read);
+    }
+    digest.update((byte) 0);
+    return this;
+  }
+
+  public Fingerprint add(File file) throws IOException {
+    final InputStream is = new FileInputStream(file);
+    try {
+      add(file.getName());
+      return add(is);
+    } finally {
+      is.close();
+    }
+  }
+
+  public String value() {
+    final byte[] bytes = digest.digest();
+    final char[] out = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      out[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+      out[2 * i + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(out);
+  }
+}
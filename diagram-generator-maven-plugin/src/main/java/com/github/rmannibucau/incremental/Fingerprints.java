@@ -0,0 +1,79 @@
+package com.github.rmannibucau.incremental;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Computes the fingerprints of the inputs of the generation.
+ *
+ * Diagrams are fingerprinted once loaded and not through the files they come
+ * from: imported files, beans or classes only matter through what they change
+ * in the graph (texts, icons, edges).
+ *
+ * @author Romain Manni-Bucau
+ */
+public final class Fingerprints {
+  private static final String PLUGIN_POM = "META-INF/maven/com.github.rmannibucau/diagram-generator-maven-plugin/pom.properties";
+
+  private Fingerprints() {
+    // no-op
+  }
+
+  /**
+   * @return a fingerprint of the diagram content, independent of the iteration order of the graph.
+   */
+  public static String diagram(Diagram diagram) {
+    final List<String> nodes = new ArrayList<String>(diagram.getVertexCount());
+    for (Node node : diagram.getVertices()) {
+      nodes.add(node.getText() + '|' + (node.getIconKey() == null ? "" : node.getIconKey()));
+    }
+
+    final List<String> edges = new ArrayList<String>(diagram.getEdgeCount());
+    for (Edge edge : diagram.getEdges()) {
+      edges.add(diagram.getSource(edge).getText() + "->" + diagram.getDest(edge).getText() + '|' + edge.getText());
+    }
+
+    Collections.sort(nodes);
+    Collections.sort(edges);
+
+    final Fingerprint fingerprint = new Fingerprint().add(diagram.getName());
+    for (String node : nodes) {
+      fingerprint.add(node);
+    }
+    for (String edge : edges) {
+      fingerprint.add(edge);
+    }
+    return fingerprint.value();
+  }
+
+  public static String pluginVersion() {
+    final InputStream is = Fingerprints.class.getClassLoader().getResourceAsStream(PLUGIN_POM);
+    if (is != null) {
+      try {
+        try {
+          final Properties properties = new Properties();
+          properties.load(is);
+          return properties.getProperty("version", "unknown");
+        } finally {
+          is.close();
+        }
+      } catch (IOException e) {
+        // no-op: fallback on the manifest
+      }
+    }
+
+    final String version = Fingerprints.class.getPackage().getImplementationVersion();
+    if (version != null) {
+      return version;
+    }
+    return "unknown";
+  }
+}
@@ -1,10 +1,26 @@
 package com.github.rmannibucau;
 
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.Test;
 
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
-import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Romain Manni-Bucau, Andreas Drobisch
@@ -20,6 +36,72 @@ public class DiagramGeneratorMojoTest {
     assertTrue(new File(mojo.getOutput(), "camel.png").exists());
   }
 
+  @Test
+  public void executeWithTiles() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "java2d", "png");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "tiles"));
+    mojo.setTileHeight(100);
+    mojo.execute();
+
+    BufferedImage picture = ImageIO.read(new File(mojo.getOutput(), "camel.png"));
+    assertTrue(picture.getWidth() <= 480);
+    assertTrue(picture.getHeight() <= 640);
+    assertTrue(picture.getHeight() > 100);
+  }
+
+  @Test
+  public void tiledAndUntiledPngAreOpaque() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "java2d", "png");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "strips"));
+    mojo.setTileHeight(37);
+    mojo.execute();
+    BufferedImage tiled = ImageIO.read(new File(mojo.getOutput(), "camel.png"));
+
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "no-strips"));
+    mojo.setTileHeight(-1);
+    mojo.execute();
+    BufferedImage picture = ImageIO.read(new File(mojo.getOutput(), "camel.png"));
+
+    assertFalse(tiled.getColorModel().hasAlpha());
+    assertFalse(picture.getColorModel().hasAlpha());
+    assertEquals(picture.getWidth(), tiled.getWidth());
+    assertEquals(picture.getHeight(), tiled.getHeight());
+  }
+
+  @Test(timeout = 60000)
+  public void concurrentDiagramsInSmallRasterMemory() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "java2d", "png,jpg");
+    mojo.setInput("com.github.rmannibucau.routes");
+    mojo.setFileType("java");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "routes"));
+    mojo.setAdditionalClasspathElements(Collections.singletonList(input.getParentFile().getPath()));
+    mojo.setThreads(3);
+    mojo.setRasterMemory(1); // smaller than a picture: they are painted one by one
+    mojo.setIncremental(false);
+    final List<String> rendered = new ArrayList<String>();
+    mojo.setLog(new SystemStreamLog() {
+      @Override
+      public void info(CharSequence content) {
+        if (content.toString().startsWith("rendered diagram")) {
+          rendered.add(content.toString());
+        }
+      }
+    });
+    mojo.execute();
+
+    assertEquals(3, rendered.size());
+    for (String name : new String[] { "SplitRoute", "ChoiceRoute", "FilterRoute" }) {
+      assertTrue(new File(mojo.getOutput(), name + ".png").exists());
+      assertTrue(new File(mojo.getOutput(), name + ".jpg").exists());
+    }
+  }
+
   @Test
   public void executeWithBatikRenderer() throws Exception {
     File input = new File(getClass().getResource("/spring/").getFile());
@@ -30,6 +112,191 @@ public class DiagramGeneratorMojoTest {
     assertTrue(new File(mojo.getOutput(), "camel.svg").exists());
   }
 
+  @Test
+  public void streamedSvgHasTheTextsOfTheDomOne() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "batik", "svg");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "svg-stream"));
+    mojo.execute();
+    List<String> streamed = texts(new File(mojo.getOutput(), "camel.svg"));
+
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "svg-dom"));
+    mojo.setSvgWriter("dom");
+    mojo.execute();
+    List<String> dom = texts(new File(mojo.getOutput(), "camel.svg"));
+
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "svgz"));
+    mojo.setSvgWriter("stream");
+    mojo.setFormat("svgz");
+    mojo.execute();
+    List<String> compressed = texts(new File(mojo.getOutput(), "camel.svgz"));
+
+    assertTrue(streamed.size() > 0);
+    Collections.sort(streamed);
+    Collections.sort(dom);
+    Collections.sort(compressed);
+    assertEquals(dom, streamed);
+    assertEquals(streamed, compressed);
+  }
+
+  @Test
+  public void executeWithSeveralFormats() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "batik", "png, jpg,svg,svgz,png");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "formats"));
+    mojo.execute();
+
+    for (String extension : new String[] { "png", "jpg", "svg", "svgz" }) {
+      assertTrue(new File(mojo.getOutput(), "camel." + extension).exists());
+    }
+
+    // pictures of the layout and its margins like the svg, not of the default size of a transcoder
+    Element svg = parse(new File(mojo.getOutput(), "camel.svg")).getDocumentElement();
+    for (String extension : new String[] { "png", "jpg" }) {
+      BufferedImage picture = ImageIO.read(new File(mojo.getOutput(), "camel." + extension));
+      assertEquals(svg.getAttribute("width"), Integer.toString(picture.getWidth()));
+      assertEquals(svg.getAttribute("height"), Integer.toString(picture.getHeight()));
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void tiledPngWithOtherFormatsInSmallRasterMemory() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "java2d", "png,jpg");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "tiles-formats"));
+    mojo.setTileHeight(100);
+    mojo.setRasterMemory(1); // smaller than the picture: it takes the whole budget
+    mojo.execute();
+
+    assertTrue(new File(mojo.getOutput(), "camel.png").exists());
+    assertTrue(new File(mojo.getOutput(), "camel.jpg").exists());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void svgNeedsTheBatikRenderer() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "java2d", "png,svg");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "java2d-svg"));
+    mojo.execute();
+  }
+
+  @Test
+  public void incrementalOnlyRendersAddedFormats() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "java2d", "png");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "incremental-formats"));
+    mojo.setIncremental(true);
+    mojo.execute();
+
+    File png = new File(mojo.getOutput(), "camel.png");
+    assertTrue(png.setLastModified(0));
+
+    mojo.setFormat("png,jpg");
+    mojo.execute();
+    assertEquals(0, png.lastModified());
+    assertTrue(new File(mojo.getOutput(), "camel.jpg").exists());
+  }
+
+  @Test
+  public void incrementalSkipsUpToDateDiagrams() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "viewer", "png");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "incremental"));
+    mojo.setIncremental(true);
+    mojo.execute();
+
+    File diagram = new File(mojo.getOutput(), "camel.png");
+    assertTrue(diagram.setLastModified(0));
+
+    mojo.execute();
+    assertEquals(0, diagram.lastModified());
+
+    mojo.setWidth(mojo.getWidth() + 1);
+    mojo.execute();
+    assertTrue(diagram.lastModified() > 0);
+  }
+
+  @Test
+  public void incrementalRegeneratesOnLayoutAndRenderSettings() throws Exception {
+    File input = new File(getClass().getResource("/spring/").getFile());
+
+    DiagramGeneratorMojo mojo = testMojo(input, "java2d", "png");
+    mojo.setOutput(new File(input.getParentFile().getParentFile(), "incremental-settings"));
+    mojo.setIncremental(true);
+    mojo.execute();
+    File png = new File(mojo.getOutput(), "camel.png");
+
+    // threads and memory only change how the same pictures are produced
+    mojo.setThreads(mojo.getThreads() + 1);
+    mojo.setRasterMemory(mojo.getRasterMemory() + 1);
+    mojo.setRasterPool(mojo.getRasterPool() + 1);
+    assertReused(mojo, png);
+
+    mojo.setLayoutBudget(mojo.getLayoutBudget() + 1);
+    assertRegenerated(mojo, png);
+    mojo.setCrossingSweeps(mojo.getCrossingSweeps() + 1);
+    assertRegenerated(mojo, png);
+    mojo.setLayout("level");
+    assertRegenerated(mojo, png);
+    mojo.setLayoutMaxNodes(mojo.getLayoutMaxNodes() + 1);
+    assertRegenerated(mojo, png);
+    mojo.setLayoutMaxEdges(mojo.getLayoutMaxEdges() + 1);
+    assertRegenerated(mojo, png);
+    mojo.setLayoutMaxCycleDensity(mojo.getLayoutMaxCycleDensity() + 0.5);
+    assertRegenerated(mojo, png);
+    mojo.setTileHeight(mojo.getTileHeight() + 16);
+    assertRegenerated(mojo, png);
+    mojo.setPngCompression("fast");
+    assertRegenerated(mojo, png);
+    mojo.setSvgWriter("dom");
+    assertRegenerated(mojo, png);
+    mojo.setAdjust(!mojo.getAdjust());
+    assertRegenerated(mojo, png);
+    mojo.setHeight(mojo.getHeight() + 1);
+    assertRegenerated(mojo, png);
+  }
+
+  private static void assertReused(DiagramGeneratorMojo mojo, File diagram) throws Exception {
+    assertTrue(diagram.setLastModified(0));
+    mojo.execute();
+    assertEquals(0, diagram.lastModified());
+  }
+
+  private static void assertRegenerated(DiagramGeneratorMojo mojo, File diagram) throws Exception {
+    assertTrue(diagram.setLastModified(0));
+    mojo.execute();
+    assertTrue(diagram.lastModified() > 0);
+  }
+
+  private static List<String> texts(File svg) throws Exception {
+    NodeList nodes = parse(svg).getElementsByTagName("text");
+    List<String> texts = new ArrayList<String>();
+    for (int i = 0; i < nodes.getLength(); i++) {
+      texts.add(nodes.item(i).getTextContent());
+    }
+    return texts;
+  }
+
+  private static Document parse(File svg) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    InputStream stream = new FileInputStream(svg);
+    if (svg.getName().endsWith(".svgz")) {
+      stream = new GZIPInputStream(stream);
+    }
+    try {
+      return factory.newDocumentBuilder().parse(stream);
+    } finally {
+      stream.close();
+    }
+  }
+
   private DiagramGeneratorMojo testMojo(File input, String renderer, String format) {
     DiagramGeneratorMojo mojo = new DiagramGeneratorMojo();
     mojo.setInput(input.getPath());
@@ -41,6 +308,7 @@ public class DiagramGeneratorMojoTest {
     mojo.setWidth(480);
     mojo.setHeight(640);
     mojo.setView(false);
+    mojo.setIncremental(false); // outputs of a previous build are not reused
     return mojo;
   }
 
@@ -0,0 +1,87 @@
+package com.github.rmannibucau.classloader;
+
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class ClassLoaderCacheTest {
+  private final Log log = new SystemStreamLog();
+  private final ClassLoader parent = getClass().getClassLoader();
+
+  @Test public void reusedUntilTheSessionEnds() {
+    final File classes = new File("target/classloader-cache/classes");
+    classes.mkdirs();
+    final List<String> elements = Collections.singletonList(classes.getPath());
+
+    final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+    final int[] ended = new int[1];
+    request.setExecutionListener(new AbstractExecutionListener() {
+      @Override public void sessionEnded(ExecutionEvent event) {
+        ended[0]++;
+      }
+    });
+    ClassLoaderCache.closeAtSessionEnd(request, log);
+    ClassLoaderCache.closeAtSessionEnd(request, log); // second module of the build
+
+    final ClassLoaderCache.Entry first = ClassLoaderCache.acquire(elements, parent, log);
+    ClassLoaderCache.release(first, log);
+    final ClassLoaderCache.Entry second = ClassLoaderCache.acquire(elements, parent, log);
+    assertSame(first, second);
+    ClassLoaderCache.release(second, log);
+    assertFalse(first.isClosed());
+
+    request.getExecutionListener().sessionEnded(null);
+    assertEquals(1, ended[0]); // maven listener still called, once
+    assertTrue(first.isClosed());
+    final ClassLoaderCache.Entry next = ClassLoaderCache.acquire(elements, parent, log);
+    assertNotSame(first, next);
+    ClassLoaderCache.release(next, log);
+    ClassLoaderCache.close(log);
+  }
+
+  @Test public void rebuiltJarGetsAFreshClassLoader() throws Exception {
+    final File jar = new File("target/classloader-cache/loader.jar");
+    jar.getParentFile().mkdirs();
+    write(jar, 10);
+    final List<String> elements = Collections.singletonList(jar.getPath());
+
+    final ClassLoaderCache.Entry first = ClassLoaderCache.acquire(elements, parent, log);
+    write(jar, 20);
+    final ClassLoaderCache.Entry second = ClassLoaderCache.acquire(elements, parent, log);
+    assertNotSame(first, second);
+    assertFalse(first.isClosed()); // still used
+
+    ClassLoaderCache.release(first, log);
+    assertTrue(first.isClosed());
+    ClassLoaderCache.release(second, log);
+    ClassLoaderCache.close(log);
+    assertTrue(second.isClosed());
+  }
+
+  private static void write(File file, int size) throws Exception {
+    final FileOutputStream os = new FileOutputStream(file);
+    try {
+      os.write(new byte[size]);
+    } finally {
+      os.close();
+    }
+  }
+}
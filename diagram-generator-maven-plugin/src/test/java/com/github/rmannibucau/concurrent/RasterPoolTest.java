@@ -0,0 +1,54 @@
+package com.github.rmannibucau.concurrent;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class RasterPoolTest {
+  @Test public void reusesClearedPicturesOfTheSameBucket() {
+    final RasterPool pool = new RasterPool(1024 * 1024);
+    final BufferedImage first = pool.borrow(100, 90, BufferedImage.TYPE_INT_ARGB);
+    first.setRGB(10, 10, 0xff123456);
+    pool.release(first);
+    assertEquals(4 * 128 * 128, pool.getRetainedBytes());
+
+    final BufferedImage second = pool.borrow(120, 50, BufferedImage.TYPE_INT_ARGB);
+    assertEquals(120, second.getWidth());
+    assertEquals(50, second.getHeight());
+    assertSame(first.getRaster().getDataBuffer(), second.getRaster().getDataBuffer());
+    assertEquals(0, second.getRGB(10, 10));
+    assertEquals(0, pool.getRetainedBytes());
+
+    final BufferedImage other = pool.borrow(120, 50, BufferedImage.TYPE_INT_RGB); // other type, other bucket
+    assertNotSame(second.getRaster().getDataBuffer(), other.getRaster().getDataBuffer());
+  }
+
+  @Test public void chargesTheWholePooledPicture() {
+    final RasterPool pool = new RasterPool(1024 * 1024);
+    assertEquals(4 * 128 * 256, pool.bytes(100, 130));
+    assertEquals(4 * 100 * 130, new RasterPool(0).bytes(100, 130)); // no pooling, no rounding
+
+    final BufferedImage borrowed = pool.borrow(100, 130, BufferedImage.TYPE_INT_ARGB);
+    pool.release(borrowed);
+    assertEquals(pool.bytes(100, 130), pool.getRetainedBytes());
+  }
+
+  @Test public void retainsAtMostItsMaximum() {
+    final RasterPool pool = new RasterPool(4 * 128 * 128);
+    final BufferedImage first = pool.borrow(128, 128, BufferedImage.TYPE_INT_ARGB);
+    final BufferedImage second = pool.borrow(128, 128, BufferedImage.TYPE_INT_ARGB);
+    pool.release(first);
+    pool.release(second);
+    assertEquals(4 * 128 * 128, pool.getRetainedBytes());
+
+    pool.release(new byte[16]);
+    assertEquals(4 * 128 * 128, pool.getRetainedBytes());
+  }
+}
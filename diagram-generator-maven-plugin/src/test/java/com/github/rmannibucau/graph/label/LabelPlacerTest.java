@@ -0,0 +1,32 @@
+package com.github.rmannibucau.graph.label;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class LabelPlacerTest {
+    @Test public void labelsOfParallelEdgesDontOverlap() {
+        LabelPlacer placer = new LabelPlacer(null, LabelPlacer.DEFAULT_CELL_SIZE);
+        Rectangle2D node = new Rectangle2D.Double(90, 140, 20, 20);
+        placer.addObstacle(node);
+
+        Point2D from = new Point2D.Double(100, 0);
+        Point2D to = new Point2D.Double(100, 300);
+        Rectangle2D first = placer.place(from, to, 40, 10);
+        Rectangle2D second = placer.place(from, to, 40, 10);
+        Rectangle2D third = placer.place(from, to, 40, 10);
+
+        assertFalse(first.intersects(node));
+        assertFalse(second.intersects(node));
+        assertFalse(third.intersects(node));
+        assertFalse(first.intersects(second));
+        assertFalse(first.intersects(third));
+        assertFalse(second.intersects(third));
+    }
+}
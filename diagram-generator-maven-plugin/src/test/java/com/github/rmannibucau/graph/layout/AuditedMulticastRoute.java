@@ -0,0 +1,12 @@
+package com.github.rmannibucau.graph.layout;
+
+/**
+ * {@link MulticastRoute} with one more processor before the multicast.
+ *
+ * @author Romain Manni-Bucau
+ */
+public class AuditedMulticastRoute extends MulticastRoute {
+    @Override protected boolean audited() {
+        return true;
+    }
+}
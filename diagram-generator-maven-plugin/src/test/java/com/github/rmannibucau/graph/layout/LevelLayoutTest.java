@@ -0,0 +1,425 @@
+package com.github.rmannibucau.graph.layout;
+
+import com.github.rmannibucau.graph.transformer.VertexShapeTransformer;
+import com.github.rmannibucau.loader.spi.FileType;
+import com.github.rmannibucau.loader.spi.LoaderHelper;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class LevelLayoutTest {
+    @Test public void cycleThroughDirectEndpoint() {
+        Diagram diagram = new Diagram();
+        Node from = node(diagram, "timer:t");
+        Node a = node(diagram, "direct:a");
+        Node b = node(diagram, "b");
+        Node c = node(diagram, "c");
+        Node d = node(diagram, "d");
+        diagram.addEdge(new Edge(), from, a);
+        diagram.addEdge(new Edge(), a, b);
+        diagram.addEdge(new Edge(), b, c);
+        diagram.addEdge(new Edge(), c, a); // loop back
+        diagram.addEdge(new Edge(), c, d);
+
+        LayeredGraph layered = new LayeredGraph(diagram);
+        assertEquals(5, layered.getLevelCount());
+        assertEquals(1, layered.level(layered.index(a)));
+        assertEquals(4, layered.level(layered.index(d)));
+
+        LevelLayout layout = layout(diagram);
+        assertTrue(layout.getY(a) < layout.getY(b));
+        assertTrue(layout.getY(b) < layout.getY(c));
+        assertTrue(layout.getY(c) < layout.getY(d));
+    }
+
+    @Test public void fanOutWithoutCrossings() {
+        Diagram diagram = new Diagram();
+        Node root = node(diagram, "multicast");
+        for (int i = 0; i < 10; i++) {
+            Node branch = node(diagram, "branch" + i);
+            diagram.addEdge(new Edge(), root, branch);
+            Node leaf = node(diagram, "leaf" + i);
+            diagram.addEdge(new Edge(), branch, leaf);
+            diagram.addEdge(new Edge(), leaf, node(diagram, "end" + i));
+        }
+
+        LevelOrder order = new LevelOrder(new LayeredGraph(diagram));
+        assertEquals(0, new CrossingMinimizer(order).minimize(LevelLayout.DEFAULT_CROSSING_SWEEPS));
+    }
+
+    @Test public void compactCoordinates() {
+        Diagram diagram = new Diagram();
+        Node root = node(diagram, "multicast");
+        Node[] chain = new Node[4];
+        for (int i = 0; i < 6; i++) {
+            Node branch = node(diagram, "branch" + i);
+            diagram.addEdge(new Edge(), root, branch);
+            if (i == 0) {
+                chain[0] = branch;
+                for (int j = 1; j < chain.length; j++) {
+                    chain[j] = node(diagram, "step" + j);
+                    diagram.addEdge(new Edge(), chain[j - 1], chain[j]);
+                }
+            }
+        }
+
+        LevelLayout layout = new LevelLayout(diagram);
+        layout.setVertexShapeTransformer(new VertexShapeTransformer(new Dimension(50, 20)));
+        layout.setIgnoreSize(true);
+        layout.setSize(new Dimension(100, 100));
+
+        for (int j = 1; j < chain.length; j++) { // a chain is a straight line
+            assertEquals(layout.getX(chain[0]), layout.getX(chain[j]), 0);
+        }
+        for (Node a : diagram.getVertices()) { // no overlap in a level, canvas grown to the content
+            assertTrue(layout.getX(a) - 25 >= 0 && layout.getX(a) + 25 <= layout.getSize().width);
+            for (Node b : diagram.getVertices()) {
+                if (a != b && layout.getY(a) == layout.getY(b)) {
+                    assertTrue(Math.abs(layout.getX(a) - layout.getX(b)) >= 50);
+                }
+            }
+        }
+        assertTrue(layout.getSize().width < 6 * 50 * 2); // packed, not spread
+    }
+
+    @Test(timeout = 10000) public void largeCyclicDiagram() {
+        Diagram diagram = new Diagram();
+        Random random = new Random(1234);
+        Node[] nodes = new Node[10000];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = node(diagram, "n" + i);
+            if (i > 0) {
+                diagram.addEdge(new Edge(), nodes[random.nextInt(i)], nodes[i]);
+            }
+        }
+        for (int i = 0; i < 500; i++) { // back edges
+            int from = 1 + random.nextInt(nodes.length - 1);
+            diagram.addEdge(new Edge(), nodes[from], nodes[random.nextInt(from)]);
+        }
+
+        LayeredGraph layered = new LayeredGraph(diagram);
+        for (int i = 0; i < layered.size(); i++) {
+            for (int successor : layered.successors(i)) {
+                assertTrue(layered.level(successor) > layered.level(i));
+            }
+        }
+        layout(diagram);
+    }
+
+    @Test public void disconnectedRoutesArePacked() {
+        Diagram diagram = new Diagram();
+        Node[][] routes = new Node[3][];
+        for (int r = 0; r < routes.length; r++) {
+            routes[r] = new Node[100 * (r + 1)];
+            for (int i = 0; i < routes[r].length; i++) {
+                routes[r][i] = node(diagram, "r" + r + "n" + i);
+                if (i > 0) {
+                    diagram.addEdge(new Edge(), routes[r][i / 2], routes[r][i]);
+                }
+            }
+        }
+        assertEquals(3, ConnectedComponents.weak(diagram).size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            LevelLayout layout = new LevelLayout(diagram);
+            layout.setVertexShapeTransformer(new VertexShapeTransformer(new Dimension(50, 20)));
+            layout.setExecutor(executor);
+            layout.setIgnoreSize(true);
+            layout.setSize(new Dimension(640, 480));
+
+            Rectangle[] bounds = new Rectangle[routes.length];
+            for (int r = 0; r < routes.length; r++) {
+                for (Node node : routes[r]) {
+                    Rectangle box = new Rectangle((int) layout.getX(node) - 25, (int) layout.getY(node) - 10, 50, 20);
+                    bounds[r] = bounds[r] == null ? box : bounds[r].union(box);
+                }
+                assertTrue(layout.getSize().width >= bounds[r].getMaxX());
+                assertTrue(layout.getSize().height >= bounds[r].getMaxY());
+            }
+            for (int r = 0; r < routes.length; r++) {
+                for (int o = r + 1; o < routes.length; o++) {
+                    assertFalse(bounds[r].intersects(bounds[o]));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void cachedLayoutIsStable() throws Exception {
+        File output = new File("target/layout-cache");
+        new File(output, LayoutCache.DIRECTORY + "/route.properties").delete();
+
+        LevelLayout first = cachedLayout(route(false), output);
+        Diagram diagram = route(false);
+        LevelLayout same = cachedLayout(diagram, output);
+        for (Node node : diagram.getVertices()) {
+            assertEquals(first.transform(find(first, node.getId())), same.transform(node));
+        }
+
+        diagram = route(true); // one more processor on the last level
+        LevelLayout changed = cachedLayout(diagram, output);
+        for (int i = 0; i < 5; i++) { // unchanged level keeps its order
+            for (int j = 0; j < 5; j++) {
+                assertEquals(first.getX(find(first, "b" + i)) < first.getX(find(first, "b" + j)),
+                    changed.getX(find(changed, "b" + i)) < changed.getX(find(changed, "b" + j)));
+            }
+        }
+    }
+
+    @Test public void editedCamelRouteKeepsItsCachedOrder() throws Exception {
+        File output = new File("target/layout-cache-camel");
+        new File(output, LayoutCache.DIRECTORY + "/multicast.properties").delete();
+
+        Diagram diagram = camel(MulticastRoute.class);
+        LevelLayout first = cachedLayout(diagram, output);
+        Map<String, String> ids = new HashMap<String, String>();
+        for (Node node : diagram.getVertices()) {
+            ids.put(node.getText(), node.getId());
+        }
+
+        diagram = camel(AuditedMulticastRoute.class); // one more processor, the camel counter renumbers the next nodes
+        LevelLayout changed = cachedLayout(diagram, output);
+        assertEquals(ids.size() + 1, diagram.getVertices().size());
+        for (Node node : diagram.getVertices()) {
+            if (ids.containsKey(node.getText())) {
+                assertEquals(ids.get(node.getText()), node.getId());
+            }
+        }
+        for (int i = 0; i < 5; i++) { // the branches keep their cached order
+            for (int j = 0; j < 5; j++) {
+                String bi = ids.get(branch(diagram, i));
+                String bj = ids.get(branch(diagram, j));
+                assertEquals(first.getX(find(first, bi)) < first.getX(find(first, bj)),
+                    changed.getX(find(changed, bi)) < changed.getX(find(changed, bj)));
+            }
+        }
+    }
+
+    @Test public void cacheHitDoesNotOrderAgain() throws Exception {
+        File output = new File("target/layout-cache-hit");
+        new File(output, LayoutCache.DIRECTORY + "/routes.properties").delete();
+        final AtomicInteger sorts = new AtomicInteger(); // big components are ordered in the executor
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override protected void beforeExecute(Thread thread, Runnable task) {
+                sorts.incrementAndGet();
+            }
+        };
+        try {
+            cachedLayout(routes(), output, 50, executor);
+            assertEquals(2, sorts.get());
+
+            LevelLayout restored = cachedLayout(routes(), output, 50, executor);
+            assertEquals(2, sorts.get());
+
+            LevelLayout wider = cachedLayout(routes(), output, 120, executor); // same diagram, bigger boxes
+            assertEquals(4, sorts.get());
+            for (Node a : wider.getGraph().getVertices()) {
+                for (Node b : wider.getGraph().getVertices()) {
+                    if (a != b && wider.getY(a) == wider.getY(b)) {
+                        assertTrue(Math.abs(wider.getX(a) - wider.getX(b)) >= 120);
+                    }
+                }
+            }
+            assertFalse(wider.getSize().equals(restored.getSize()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void automaticSelection() {
+        Diagram diagram = route(false);
+        LayoutOptions options = new LayoutOptions();
+        options.setSize(new Dimension(640, 480));
+        assertTrue(new AutoLayoutProvider().select(diagram, options) instanceof LevelLayoutProvider);
+        assertTrue(LayoutHelper.getProvider("auto").create(diagram, options) instanceof LevelLayout);
+
+        options.setMaxNodes(5);
+        assertTrue(new AutoLayoutProvider().select(diagram, options) instanceof LinearLayoutProvider);
+
+        options.setMaxNodes(LayoutOptions.DEFAULT_MAX_NODES);
+        diagram.addEdge(new Edge(), find(diagram, "l0"), find(diagram, "root"));
+        diagram.addEdge(new Edge(), find(diagram, "l1"), find(diagram, "root"));
+        diagram.addEdge(new Edge(), find(diagram, "l2"), find(diagram, "root"));
+        diagram.addEdge(new Edge(), find(diagram, "l3"), find(diagram, "root"));
+        diagram.addEdge(new Edge(), find(diagram, "l4"), find(diagram, "root"));
+        assertTrue(new AutoLayoutProvider().select(diagram, options) instanceof ForceLayoutProvider); // loops everywhere
+    }
+
+    @Test(timeout = 20000) public void forceDirectedMeshIsReproducible() {
+        Diagram diagram = new Diagram();
+        Random random = new Random(5678);
+        Node[] nodes = new Node[600];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = node(diagram, "route" + i);
+        }
+        for (int i = 0; i < nodes.length; i++) { // routes calling each other
+            diagram.addEdge(new Edge(), nodes[i], nodes[(i + 1) % nodes.length]);
+            diagram.addEdge(new Edge(), nodes[i], nodes[random.nextInt(nodes.length)]);
+        }
+
+        ForceDirectedLayout serial = forceLayout(diagram, null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ForceDirectedLayout parallel = forceLayout(diagram, executor);
+            for (Node node : nodes) {
+                assertEquals(serial.transform(node), parallel.transform(node));
+                assertTrue(parallel.getX(node) >= 0 && parallel.getX(node) <= parallel.getSize().width);
+                assertTrue(parallel.getY(node) >= 0 && parallel.getY(node) <= parallel.getSize().height);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test public void providersLayOutOnceWithTheirOptions() {
+        final Diagram diagram = route(false);
+        final VertexShapeTransformer shapes = new VertexShapeTransformer(new Dimension(50, 20));
+        final LayoutOptions options = new LayoutOptions();
+        options.setSize(new Dimension(640, 480));
+        options.setVertexShapeTransformer(shapes);
+        options.setBudget(1000);
+
+        final int[] runs = new int[2]; // setSize() lays out, a first run would ignore the shapes and the budget
+        LevelLayoutProvider.configure(new LevelLayout(diagram) {
+            @Override public void initialize() {
+                runs[0]++;
+                super.initialize();
+            }
+        }, options, LevelLayout.DEFAULT_CROSSING_SWEEPS);
+        ForceLayoutProvider.configure(new ForceDirectedLayout(diagram) {
+            @Override public void initialize() {
+                runs[1]++;
+                super.initialize();
+            }
+        }, options);
+        assertEquals(1, runs[0]);
+        assertEquals(1, runs[1]);
+    }
+
+    private static ForceDirectedLayout forceLayout(Diagram diagram, ExecutorService executor) {
+        ForceDirectedLayout layout = new ForceDirectedLayout(diagram);
+        layout.setVertexShapeTransformer(new VertexShapeTransformer(new Dimension(50, 20)));
+        layout.setExecutor(executor);
+        layout.setIgnoreSize(true);
+        layout.setSize(new Dimension(640, 480));
+        return layout;
+    }
+
+    private static Diagram route(boolean extra) {
+        Diagram diagram = new Diagram();
+        diagram.setName("route");
+        Node root = node(diagram, "from");
+        root.setId("root");
+        for (int i = 4; i >= 0; i--) {
+            Node branch = node(diagram, "b" + i);
+            branch.setId("b" + i);
+            diagram.addEdge(new Edge(), root, branch);
+            Node leaf = node(diagram, "l" + i);
+            leaf.setId("l" + i);
+            diagram.addEdge(new Edge(), branch, leaf);
+        }
+        if (extra) {
+            Node added = node(diagram, "added");
+            added.setId("added");
+            diagram.addEdge(new Edge(), find(diagram, "b2"), added);
+        }
+        return diagram;
+    }
+
+    // two trees big enough to be ordered in the executor
+    private static Diagram routes() {
+        Diagram diagram = new Diagram();
+        diagram.setName("routes");
+        for (int r = 0; r < 2; r++) {
+            Node[] nodes = new Node[70];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = node(diagram, "r" + r + "n" + i);
+                nodes[i].setId("r" + r + "n" + i);
+                if (i > 0) {
+                    diagram.addEdge(new Edge(), nodes[(i - 1) / 3], nodes[i]);
+                }
+            }
+        }
+        return diagram;
+    }
+
+    private static Diagram camel(Class<?> route) {
+        Diagram diagram = LoaderHelper.getLoader("camel").load(route.getName(), FileType.JAVA).iterator().next();
+        diagram.setName("multicast"); // same cache for both versions
+        return diagram;
+    }
+
+    private static String branch(Diagram diagram, int index) {
+        for (Node node : diagram.getVertices()) {
+            if (node.getText().contains("seda:b" + index)) {
+                return node.getText();
+            }
+        }
+        throw new IllegalArgumentException("seda:b" + index);
+    }
+
+    private static LevelLayout cachedLayout(Diagram diagram, File output) throws Exception {
+        return cachedLayout(diagram, output, 50, null);
+    }
+
+    private static LevelLayout cachedLayout(Diagram diagram, File output, int nodeWidth, ExecutorService executor) throws Exception {
+        LayoutCache cache = LayoutCache.load(output, diagram.getName());
+        LevelLayout layout = new LevelLayout(diagram);
+        layout.setVertexShapeTransformer(new VertexShapeTransformer(new Dimension(nodeWidth, 20)));
+        layout.setCache(cache);
+        layout.setExecutor(executor);
+        layout.setIgnoreSize(true);
+        layout.setSize(new Dimension(640, 480));
+        cache.save();
+        return layout;
+    }
+
+    private static Node find(LevelLayout layout, String id) {
+        return find((Diagram) layout.getGraph(), id);
+    }
+
+    private static Node find(Diagram diagram, String id) {
+        for (Node node : diagram.getVertices()) {
+            if (id.equals(node.getId())) {
+                return node;
+            }
+        }
+        throw new IllegalArgumentException(id);
+    }
+
+    private static LevelLayout layout(Diagram diagram) {
+        LevelLayout layout = new LevelLayout(diagram);
+        layout.setSize(new Dimension(640, 480));
+        layout.initialize();
+        return layout;
+    }
+
+    private static Node node(Diagram diagram, String text) {
+        Node node = new Node(text);
+        diagram.addVertex(node);
+        return node;
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.rmannibucau.graph.layout;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.ProcessorDefinition;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class MulticastRoute extends RouteBuilder {
+    @Override public void configure() throws Exception {
+        ProcessorDefinition<?> route = from("direct:in").to("seda:validate");
+        if (audited()) {
+            route = route.to("seda:audit");
+        }
+        route.multicast()
+                .to("seda:b0", "seda:b1", "seda:b2", "seda:b3", "seda:b4")
+            .end()
+            .to("seda:out");
+    }
+
+    protected boolean audited() {
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.graph.layout.LevelLayout;
+import com.github.rmannibucau.graph.transformer.VertexShapeTransformer;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class Java2DPainterTest {
+    @Test public void stripsOnlyNeedTheElementsCrossingThem() {
+        final VertexShapeTransformer shapes = new VertexShapeTransformer(Java2DPainter.metrics(Java2DPainter.MEASURE_FONT));
+        final LevelLayout layout = layout(shapes);
+        final Java2DPainter painter = new Java2DPainter(shapes);
+        final Java2DPainter.Scene scene = painter.scene(layout);
+        final double factor = 0.8;
+        final int width = (int) (layout.getSize().width * factor);
+        final int height = (int) (layout.getSize().height * factor);
+
+        final int stripHeight = 3; // strips cut the nodes, the edges and the labels everywhere
+        final BufferedImage all = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_RGB);
+        final BufferedImage crossing = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_RGB);
+        int painted = 0;
+        for (int y = 0; y < height; y += stripHeight) {
+            paint(painter, scene, all, factor, y, null);
+            paint(painter, scene, crossing, factor, y, new Rectangle2D.Double(0, y / factor, width / factor, stripHeight / factor));
+
+            for (int r = 0; r < stripHeight; r++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(all.getRGB(x, r), crossing.getRGB(x, r));
+                    if (all.getRGB(x, r) != 0xffffffff) {
+                        painted++;
+                    }
+                }
+            }
+        }
+        assertTrue(painted > 0);
+    }
+
+    private static void paint(Java2DPainter painter, Java2DPainter.Scene scene, BufferedImage strip, double factor, int y,
+                              Rectangle2D area) {
+        final Graphics2D g = RasterImages.createGraphics(strip);
+        try {
+            g.translate(0, -y);
+            g.scale(factor, factor);
+            painter.paint(g, scene, area);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static LevelLayout layout(VertexShapeTransformer shapes) {
+        final Diagram diagram = new Diagram();
+        final Node root = node(diagram, "choice");
+        for (int i = 0; i < 5; i++) {
+            final Node branch = node(diagram, "when" + i);
+            diagram.addEdge(new Edge("header.foo = " + i), root, branch);
+            final Node end = node(diagram, "seda:end" + i);
+            diagram.addEdge(new Edge(), branch, end);
+            if (i > 0) {
+                diagram.addEdge(new Edge("back"), end, root);
+            }
+        }
+
+        final LevelLayout layout = new LevelLayout(diagram);
+        layout.setVertexShapeTransformer(shapes);
+        layout.setSize(new Dimension(600, 400));
+        return layout;
+    }
+
+    private static Node node(Diagram diagram, String text) {
+        final Node node = new Node(text);
+        diagram.addVertex(node);
+        return node;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.rmannibucau.graph.renderer;
+
+import com.github.rmannibucau.DiagramGeneratorMojo;
+import com.github.rmannibucau.concurrent.RasterMemoryLimiter;
+import com.github.rmannibucau.concurrent.RasterPool;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class Java2DRendererTest {
+    @Test public void paintsTheViewerPicture() throws Exception {
+        final DiagramGeneratorMojo configuration = new DiagramGeneratorMojo();
+        configuration.setIncremental(false);
+        final Diagram diagram = diagram(); // same graph instance: same layout for both renderers
+
+        final File java2dOutput = output("java2d-picture");
+        new Java2DRenderer(configuration, new SystemStreamLog(), new RasterMemoryLimiter(Long.MAX_VALUE), new RasterPool(0), null, null)
+                .render(diagram, 400, 300, Collections.singletonList(OutputFormat.PNG), java2dOutput);
+        final File viewerOutput = output("viewer-picture");
+        new GraphViewerRenderer(configuration, new SystemStreamLog(), new RasterMemoryLimiter(Long.MAX_VALUE), new RasterPool(0), null, null)
+                .render(diagram, 400, 300, Collections.singletonList(OutputFormat.PNG), viewerOutput);
+
+        final BufferedImage java2d = ImageIO.read(new File(java2dOutput, "routes.png"));
+        final BufferedImage viewer = ImageIO.read(new File(viewerOutput, "routes.png"));
+        assertEquals(viewer.getWidth(), java2d.getWidth());
+        assertEquals(viewer.getHeight(), java2d.getHeight());
+        assertTrue(java2d.getWidth() == 400 || java2d.getHeight() == 300);
+
+        int painted = 0;
+        int different = 0;
+        for (int y = 0; y < viewer.getHeight(); y++) {
+            for (int x = 0; x < viewer.getWidth(); x++) {
+                final int rgb = java2d.getRGB(x, y) & 0xffffff;
+                if (rgb != 0xffffff) {
+                    painted++;
+                }
+                if (distance(rgb, viewer.getRGB(x, y) & 0xffffff) > 8) { // antialiasing rounding
+                    different++;
+                }
+            }
+        }
+        assertTrue(painted > 1000);
+        // same shapes, icons and strokes so only a few glyph edge pixels of the texts can be rasterized differently
+        assertTrue("different pixels: " + different, different <= 10);
+    }
+
+    private static int distance(int a, int b) {
+        int max = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            max = Math.max(max, Math.abs((a >> shift & 0xff) - (b >> shift & 0xff)));
+        }
+        return max;
+    }
+
+    private static File output(String name) {
+        final File output = new File("target", name);
+        output.mkdirs();
+        return output;
+    }
+
+    private static Diagram diagram() {
+        final Diagram diagram = new Diagram();
+        diagram.setName("routes");
+        final Node from = node(diagram, "vm:a");
+        final Node choice = icon(node(diagram, "choice"), "ContentBasedRouterIcon.png");
+        diagram.addEdge(new Edge(), from, choice);
+        for (int i = 0; i < 3; i++) {
+            final Node to = node(diagram, "seda:out" + i);
+            diagram.addEdge(new Edge("header.foo = " + i), choice, to);
+            diagram.addEdge(new Edge(), to, icon(node(diagram, "mock:end" + i), "MessageEndpointIcon.png"));
+        }
+        return diagram;
+    }
+
+    private static Node icon(Node node, String icon) {
+        final URL url = Java2DRendererTest.class.getResource("/icons/" + icon); // camel-loader ones
+        assertNotNull(url);
+        node.setIconKey(url.toExternalForm());
+        return node;
+    }
+
+    private static Node node(Diagram diagram, String text) {
+        final Node node = new Node(text);
+        diagram.addVertex(node);
+        return node;
+    }
+}
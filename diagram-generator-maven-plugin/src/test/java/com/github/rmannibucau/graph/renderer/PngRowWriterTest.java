@@ -0,0 +1,71 @@
+package com.github.rmannibucau.graph.renderer;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class PngRowWriterTest {
+    @Test public void stripsMakeTheWholePicture() throws Exception {
+        final BufferedImage picture = picture(37, 150, BufferedImage.TYPE_INT_RGB); // not a multiple of the strip height
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PngRowWriter writer = new PngRowWriter(out, picture.getWidth(), picture.getHeight());
+        for (int y = 0; y < picture.getHeight(); y += 16) {
+            final int rows = Math.min(16, picture.getHeight() - y);
+            writer.write(picture.getSubimage(0, y, picture.getWidth(), rows), rows);
+        }
+        writer.finish();
+
+        assertSame(picture, ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test public void parallelBlocksMakeOneStream() throws Exception {
+        final BufferedImage picture = picture(400, 500, BufferedImage.TYPE_INT_ARGB); // several blocks
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (PngCompression compression : PngCompression.values()) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final PngRowWriter writer = new PngRowWriter(out, picture.getWidth(), picture.getHeight(), true, compression, executor, null);
+                writer.write(picture, picture.getHeight());
+                writer.finish();
+
+                assertSame(picture, ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static BufferedImage picture(int width, int height, int type) {
+        final BufferedImage picture = new BufferedImage(width, height, type);
+        final Random random = new Random(1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) { // gradients and noise use every filter
+                picture.setRGB(x, y, y % 3 == 0 ? random.nextInt() : 0xff000000 | (x * 7) << 16 | (y * 3 & 0xff) << 8 | (x ^ y) & 0xff);
+            }
+        }
+        return picture;
+    }
+
+    private static void assertSame(BufferedImage picture, BufferedImage read) {
+        final int width = picture.getWidth();
+        final int height = picture.getHeight();
+        assertEquals(width, read.getWidth());
+        assertEquals(height, read.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(picture.getRGB(x, y), read.getRGB(x, y));
+            }
+        }
+    }
+}
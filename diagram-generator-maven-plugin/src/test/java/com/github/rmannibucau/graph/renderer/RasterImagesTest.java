@@ -0,0 +1,46 @@
+package com.github.rmannibucau.graph.renderer;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.awt.Dimension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class RasterImagesTest {
+    private static final Log QUIET = new SystemStreamLog() {
+        @Override public void info(CharSequence content) {
+            // no-op
+        }
+    };
+
+    @Test public void scaledPictureFitsTheRequestedSize() {
+        final Dimension requested = new Dimension(480, 640);
+        for (int width = 1; width < 1500; width += 7) {
+            for (int height = 1; height < 1500; height += 11) {
+                final Dimension layout = new Dimension(width, height);
+                final double factor = RasterImages.factor(QUIET, layout, requested);
+                final Dimension size = RasterImages.scale(layout, factor);
+
+                assertTrue(size.width <= requested.width);
+                assertTrue(size.height <= requested.height);
+                if (requested.width * 1. / width <= requested.height * 1. / height) { // the side the factor comes from
+                    assertEquals(requested.width, size.width);
+                } else {
+                    assertEquals(requested.height, size.height);
+                }
+            }
+        }
+    }
+
+    @Test public void sameSizeIsNotScaled() {
+        final Dimension size = new Dimension(480, 640);
+        assertEquals(1., RasterImages.factor(QUIET, size, new Dimension(480, 640)), 0);
+        assertEquals(size, RasterImages.scale(size, 1));
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.rmannibucau.graph.renderer;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class SvgStreamWriterTest {
+    private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+
+    @Test public void symbolsAreDefinedOnceBeforeTheNodes() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BufferedImage icon = new BufferedImage(8, 6, BufferedImage.TYPE_INT_ARGB);
+        final SvgStreamWriter writer = new SvgStreamWriter(out, 200, 100,
+                Arrays.asList(new Dimension(40, 20), new Dimension(60, 20), new Dimension(40, 20)),
+                Collections.singletonMap("router", icon));
+        writer.box(0, 0, 40, 20);
+        writer.icon("router", icon, 50, 0);
+        writer.box(100, 0, 60, 20);
+        writer.icon("router", icon, 50, 50);
+        writer.box(0, 50, 40, 20);
+        writer.arrow(20, 20, 20, 50);
+        writer.finish();
+
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        final Element svg = factory.newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray())).getDocumentElement();
+
+        final NodeList defs = svg.getElementsByTagName("defs");
+        assertEquals(1, defs.getLength());
+        assertEquals(defs.item(0), firstElement(svg));
+
+        final Element definitions = (Element) defs.item(0);
+        assertEquals(1, definitions.getElementsByTagName("style").getLength());
+        assertEquals(1, definitions.getElementsByTagName("marker").getLength());
+        final NodeList symbols = definitions.getElementsByTagName("symbol");
+        assertEquals(3, symbols.getLength()); // two box sizes and one icon
+        final NodeList images = definitions.getElementsByTagName("image");
+        assertEquals(1, images.getLength());
+        assertTrue(((Element) images.item(0)).getAttributeNS(XLINK_NS, "href").startsWith("data:image/png;base64,"));
+
+        final Set<String> ids = new HashSet<String>();
+        for (int i = 0; i < symbols.getLength(); i++) {
+            ids.add("#" + ((Element) symbols.item(i)).getAttribute("id"));
+        }
+        final NodeList uses = svg.getElementsByTagName("use");
+        assertEquals(5, uses.getLength());
+        final Set<String> used = new HashSet<String>();
+        for (int i = 0; i < uses.getLength(); i++) {
+            used.add(((Element) uses.item(i)).getAttributeNS(XLINK_NS, "href"));
+        }
+        assertEquals(ids, used);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void undeclaredIconFails() throws Exception {
+        final SvgStreamWriter writer = new SvgStreamWriter(new ByteArrayOutputStream(), 200, 100,
+                Collections.<Dimension>emptyList(), Collections.<String, BufferedImage>emptyMap());
+        writer.icon("router", new BufferedImage(8, 6, BufferedImage.TYPE_INT_ARGB), 0, 0);
+    }
+
+    private static Node firstElement(Element parent) {
+        Node child = parent.getFirstChild();
+        while (child != null && child.getNodeType() != Node.ELEMENT_NODE) {
+            child = child.getNextSibling();
+        }
+        return child;
+    }
+}
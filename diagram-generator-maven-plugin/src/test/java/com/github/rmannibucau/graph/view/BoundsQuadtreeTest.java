@@ -0,0 +1,75 @@
+package com.github.rmannibucau.graph.view;
+
+import org.junit.Test;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class BoundsQuadtreeTest {
+    @Test public void findsWhatABruteForceFinds() {
+        final Random random = new Random(1234);
+        final BoundsQuadtree<Integer> tree = new BoundsQuadtree<Integer>(new Rectangle2D.Double(0, 0, 1000, 1000));
+        final Map<Integer, Rectangle2D> all = new HashMap<Integer, Rectangle2D>();
+        for (int i = 0; i < 500; i++) {
+            put(tree, all, i, random);
+        }
+        for (int i = 0; i < 100; i++) { // moves, some outside of the tree area
+            put(tree, all, random.nextInt(500), random);
+        }
+        for (int i = 0; i < 50; i++) {
+            final Integer removed = random.nextInt(500);
+            tree.remove(removed);
+            all.remove(removed);
+        }
+        assertEquals(all.size(), tree.size());
+
+        for (int i = 0; i < 200; i++) {
+            final Rectangle2D area = new Rectangle2D.Double(random.nextInt(1000), random.nextInt(1000), random.nextInt(300), random.nextInt(300));
+            final List<Integer> expected = new ArrayList<Integer>();
+            for (Map.Entry<Integer, Rectangle2D> entry : all.entrySet()) {
+                final Rectangle2D bounds = entry.getValue();
+                if (bounds.getMinX() <= area.getMaxX() && area.getMinX() <= bounds.getMaxX()
+                        && bounds.getMinY() <= area.getMaxY() && area.getMinY() <= bounds.getMaxY()) {
+                    expected.add(entry.getKey());
+                }
+            }
+            assertEquals(sorted(expected), sorted(tree.query(area)));
+        }
+    }
+
+    @Test public void pointQueries() {
+        final BoundsQuadtree<String> tree = new BoundsQuadtree<String>(new Rectangle2D.Double(0, 0, 100, 100));
+        tree.put("a", new Rectangle2D.Double(10, 10, 20, 20));
+        tree.put("b", new Rectangle2D.Double(25, 25, 20, 20));
+        assertEquals(Collections.singletonList("a"), tree.query(15, 15));
+        assertEquals(2, tree.query(27, 27).size());
+        assertEquals(0, tree.query(80, 80).size());
+
+        tree.remove("a");
+        assertNull(tree.getBounds("a"));
+        assertEquals(Collections.singletonList("b"), tree.query(27, 27));
+    }
+
+    private static void put(BoundsQuadtree<Integer> tree, Map<Integer, Rectangle2D> all, int item, Random random) {
+        final Rectangle2D bounds = new Rectangle2D.Double(random.nextInt(1100) - 50, random.nextInt(1100) - 50, random.nextInt(80), random.nextInt(80));
+        tree.put(item, bounds);
+        all.put(item, bounds);
+    }
+
+    private static List<Integer> sorted(List<Integer> items) {
+        final List<Integer> copy = new ArrayList<Integer>(items);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.rmannibucau.graph.view;
+
+import com.github.rmannibucau.graph.GraphViewer;
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+import com.github.rmannibucau.loader.spi.graph.Edge;
+import com.github.rmannibucau.loader.spi.graph.Node;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.layout.StaticLayout;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.picking.ShapePickSupport;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class IndexPickSupportTest {
+    @Test public void picksLikeTheShapePickSupport() {
+        final Random random = new Random(1234);
+        final Diagram diagram = new Diagram();
+        final List<Node> nodes = new ArrayList<Node>();
+        for (int i = 0; i < 200; i++) {
+            final Node node = new Node("node" + i);
+            diagram.addVertex(node);
+            nodes.add(node);
+        }
+        for (int i = 0; i < nodes.size(); i++) { // no shared source or target, equally close edges are picked in any order
+            diagram.addEdge(new Edge(), nodes.get(i), nodes.get((i * 7 + 3) % nodes.size()));
+        }
+
+        final StaticLayout<Node, Edge> layout = new StaticLayout<Node, Edge>(diagram, new Dimension(2000, 2000));
+        for (Node node : nodes) {
+            layout.setLocation(node, new Point2D.Double(random.nextInt(2000), random.nextInt(2000)));
+        }
+        final GraphViewer viewer = new GraphViewer(layout);
+        viewer.setSize(800, 600);
+        final ShapePickSupport<Node, Edge> expected = new ShapePickSupport<Node, Edge>(viewer);
+        final IndexPickSupport actual = new IndexPickSupport(viewer);
+
+        assertSamePicks(random, viewer.getGraphLayout(), expected, actual);
+
+        // zoomed out (node shapes keep their size) and a dragged node
+        viewer.getRenderContext().getMultiLayerTransformer().getTransformer(Layer.LAYOUT).scale(0.4, 0.4, new Point2D.Double());
+        viewer.getRenderContext().getMultiLayerTransformer().getTransformer(Layer.VIEW).translate(-30, 20);
+        viewer.getPickedVertexState().pick(nodes.get(0), true);
+        viewer.getGraphLayout().setLocation(nodes.get(0), new Point2D.Double(50, 50));
+        assertSamePicks(random, viewer.getGraphLayout(), expected, actual);
+    }
+
+    private static void assertSamePicks(Random random, Layout<Node, Edge> layout,
+                                        ShapePickSupport<Node, Edge> expected, IndexPickSupport actual) {
+        for (int i = 0; i < 2000; i++) {
+            final int x = random.nextInt(800);
+            final int y = random.nextInt(600);
+            assertEquals(expected.getVertex(layout, x, y), actual.getVertex(layout, x, y));
+            assertEquals(expected.getEdge(layout, x, y), actual.getEdge(layout, x, y));
+        }
+        for (int i = 0; i < 50; i++) {
+            final Rectangle rectangle = new Rectangle(random.nextInt(800), random.nextInt(600), random.nextInt(300), random.nextInt(300));
+            assertEquals(new HashSet<Node>(expected.getVertices(layout, rectangle)), new HashSet<Node>(actual.getVertices(layout, rectangle)));
+        }
+    }
+}
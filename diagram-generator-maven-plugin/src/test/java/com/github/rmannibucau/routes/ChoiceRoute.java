@@ -0,0 +1,20 @@
+package com.github.rmannibucau.routes;
+
+import org.apache.camel.builder.RouteBuilder;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class ChoiceRoute extends RouteBuilder {
+    @Override public void configure() throws Exception {
+        from("vm:choice")
+            .choice()
+                .when(header("foo").isEqualTo("bar"))
+                    .to("seda:bar")
+                .when(header("foo").isEqualTo("cheese"))
+                    .to("seda:cheese")
+                .otherwise()
+                    .to("seda:other")
+            .end();
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.rmannibucau.routes;
+
+import org.apache.camel.builder.RouteBuilder;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class FilterRoute extends RouteBuilder {
+    @Override public void configure() throws Exception {
+        from("vm:filter")
+            .filter(header("foo").isEqualTo("bar"))
+                .to("seda:filtered")
+            .end()
+            .to("seda:all");
+    }
+}
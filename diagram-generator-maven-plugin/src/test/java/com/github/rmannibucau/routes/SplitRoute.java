@@ -0,0 +1,16 @@
+package com.github.rmannibucau.routes;
+
+import org.apache.camel.builder.RouteBuilder;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class SplitRoute extends RouteBuilder {
+    @Override public void configure() throws Exception {
+        from("vm:split")
+            .split(body().tokenize(" "))
+                .to("mock:splitep")
+            .end()
+            .to("seda:split-done");
+    }
+}
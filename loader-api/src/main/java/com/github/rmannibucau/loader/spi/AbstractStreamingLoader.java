@@ -0,0 +1,23 @@
+package com.github.rmannibucau.loader.spi;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implements the list based {@link Loader#load(String, FileType)} on top of the streaming one.
+ *
+ * @author Romain Manni-Bucau
+ */
+public abstract class AbstractStreamingLoader implements StreamingLoader {
+    @Override public List<Diagram> load(String input, FileType type) {
+        final List<Diagram> diagrams = new ArrayList<Diagram>();
+        load(input, type, new DiagramListener() {
+            @Override public void onDiagram(Diagram diagram) {
+                diagrams.add(diagram);
+            }
+        });
+        return diagrams;
+    }
+}
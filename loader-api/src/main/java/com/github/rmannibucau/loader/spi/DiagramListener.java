@@ -0,0 +1,12 @@
+package com.github.rmannibucau.loader.spi;
+
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+
+/**
+ * Receives the diagrams as soon as a {@link StreamingLoader} built them.
+ *
+ * @author Romain Manni-Bucau
+ */
+public interface DiagramListener {
+    void onDiagram(Diagram diagram);
+}
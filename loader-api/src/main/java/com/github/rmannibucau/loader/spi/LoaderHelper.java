@@ -1,5 +1,7 @@
 package com.github.rmannibucau.loader.spi;
 
+import com.github.rmannibucau.loader.spi.graph.Diagram;
+
 import java.util.ServiceLoader;
 
 /**
@@ -11,11 +13,29 @@ public final class LoaderHelper {
     }
 
     public static Loader getLoader(final String key) {
-        for (final Loader loader : ServiceLoader.load(Loader.class)) {
+        return getLoader(key, Thread.currentThread().getContextClassLoader());
+    }
+
+    public static Loader getLoader(final String key, final ClassLoader classLoader) {
+        for (final Loader loader : ServiceLoader.load(Loader.class, classLoader)) {
             if (key.equals(loader.key())) {
                 return loader;
             }
         }
         throw new DiagramGeneratorRuntimeException("no loader found for key " + key, null);
     }
+
+    /**
+     * Streams the diagrams of any loader, list based loaders are adapted.
+     */
+    public static void load(final Loader loader, final String input, final FileType type, final DiagramListener listener) {
+        if (loader instanceof StreamingLoader) {
+            ((StreamingLoader) loader).load(input, type, listener);
+            return;
+        }
+
+        for (final Diagram diagram : loader.load(input, type)) {
+            listener.onDiagram(diagram);
+        }
+    }
 }
@@ -0,0 +1,11 @@
+package com.github.rmannibucau.loader.spi;
+
+/**
+ * A loader handing each diagram to a listener once built instead of
+ * returning all of them at the end.
+ *
+ * @author Romain Manni-Bucau
+ */
+public interface StreamingLoader extends Loader {
+    void load(String input, FileType type, DiagramListener listener);
+}
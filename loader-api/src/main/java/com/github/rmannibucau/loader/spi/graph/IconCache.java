@@ -0,0 +1,146 @@
+package com.github.rmannibucau.loader.spi.graph;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decoded icons of the nodes, shared by all the diagrams of the process.
+ *
+ * An icon key ({@link Node#getIconKey()}) is the url of the picture, it
+ * is read once with {@link ImageIO} (no Toolkit/MediaTracker loading) and
+ * converted to an ARGB picture. Scaled variants are cached too since the
+ * same icons are drawn at the same scale for all the diagrams of a build,
+ * the least recently used ones are dropped above {@link #MAX_SCALED_BYTES}
+ * (each diagram can have its own scale).
+ *
+ * @author Romain Manni-Bucau
+ */
+public final class IconCache {
+    private static final BufferedImage MISSING = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    private static final ConcurrentMap<String, BufferedImage> IMAGES = new ConcurrentHashMap<String, BufferedImage>();
+    private static final Map<String, BufferedImage> SCALED = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true); // guarded by itself
+    private static long scaledBytes; // guarded by SCALED
+
+    static final long MAX_SCALED_BYTES = 32L * 1024 * 1024;
+
+    private IconCache() {
+        // no-op
+    }
+
+    /**
+     * @return the decoded icon, null if the key is null or can't be read.
+     */
+    public static BufferedImage get(String key) {
+        if (key == null) {
+            return null;
+        }
+        BufferedImage image = IMAGES.get(key);
+        if (image == null) {
+            image = decode(key);
+            final BufferedImage existing = IMAGES.putIfAbsent(key, image);
+            if (existing != null) {
+                image = existing;
+            }
+        }
+        return image == MISSING ? null : image;
+    }
+
+    /**
+     * @return the icon scaled to this size, null if the key is null or can't be read.
+     */
+    public static BufferedImage get(String key, int width, int height) {
+        final BufferedImage image = get(key);
+        if (image == null || (image.getWidth() == width && image.getHeight() == height)) {
+            return image;
+        }
+
+        final String scaledKey = key + '@' + width + 'x' + height;
+        synchronized (SCALED) {
+            final BufferedImage scaled = SCALED.get(scaledKey);
+            if (scaled != null) {
+                return scaled;
+            }
+        }
+
+        final BufferedImage scaled = scale(image, Math.max(1, width), Math.max(1, height));
+        synchronized (SCALED) {
+            final BufferedImage existing = SCALED.get(scaledKey);
+            if (existing != null) {
+                return existing;
+            }
+            SCALED.put(scaledKey, scaled);
+            scaledBytes += bytes(scaled);
+            final Iterator<BufferedImage> eldest = SCALED.values().iterator();
+            while (scaledBytes > MAX_SCALED_BYTES && SCALED.size() > 1) {
+                scaledBytes -= bytes(eldest.next());
+                eldest.remove();
+            }
+        }
+        return scaled;
+    }
+
+    public static void clear() {
+        IMAGES.clear();
+        synchronized (SCALED) {
+            SCALED.clear();
+            scaledBytes = 0;
+        }
+    }
+
+    static long scaledBytes() {
+        synchronized (SCALED) {
+            return scaledBytes;
+        }
+    }
+
+    private static long bytes(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    private static BufferedImage decode(String key) {
+        final BufferedImage read;
+        try {
+            read = ImageIO.read(new URL(key));
+        } catch (IOException e) {
+            return MISSING;
+        }
+        if (read == null) { // unknown format
+            return MISSING;
+        }
+        if (read.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return read;
+        }
+
+        final BufferedImage argb = new BufferedImage(read.getWidth(), read.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = argb.createGraphics();
+        try {
+            g.drawImage(read, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return argb;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        final BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+}
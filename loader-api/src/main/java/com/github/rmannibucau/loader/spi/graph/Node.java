@@ -1,22 +1,35 @@
 package com.github.rmannibucau.loader.spi.graph;
 
-import javax.swing.Icon;
-
 /**
  * @author Romain Manni-Bucau
  */
 public class Node extends Info {
-    private Icon icon;
+    private String id;
+    private String iconKey;
 
     public Node(String txt) {
         super(txt);
     }
 
-    public Icon getIcon() {
-        return icon;
+    /**
+     * @return an identifier stable between two loadings of the same input, null if the loader has none.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the url of the icon of the node, resolved with {@link IconCache}; null if the node has none.
+     */
+    public String getIconKey() {
+        return iconKey;
     }
 
-    public void setIcon(Icon icon) {
-        this.icon = icon;
+    public void setIconKey(String iconKey) {
+        this.iconKey = iconKey;
     }
 }
@@ -1,10 +1,14 @@
 package com.github.rmannibucau.loader.spi;
 
+import com.github.rmannibucau.loader.spi.graph.Diagram;
 import com.github.rmannibucau.loader.test.LoaderImpl;
 import org.junit.Test;
 
-import static junit.framework.Assert.assertEquals;
-import static junit.framework.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Romain Manni-Bucau
@@ -16,6 +20,16 @@ public class LoaderHelperTest {
         assertEquals("test", loader.key());
     }
 
+    @Test public void streamListLoader() {
+        final List<Diagram> diagrams = new ArrayList<Diagram>();
+        LoaderHelper.load(LoaderHelper.getLoader("test"), "in", FileType.XML, new DiagramListener() {
+            @Override public void onDiagram(Diagram diagram) {
+                diagrams.add(diagram);
+            }
+        });
+        assertEquals(1, diagrams.size());
+    }
+
     @Test(expected = DiagramGeneratorRuntimeException.class) public void loadKO() {
         Loader loader = LoaderHelper.getLoader("does not exist");
     }
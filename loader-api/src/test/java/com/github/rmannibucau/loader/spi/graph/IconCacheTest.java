@@ -0,0 +1,56 @@
+package com.github.rmannibucau.loader.spi.graph;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Romain Manni-Bucau
+ */
+public class IconCacheTest {
+    @Test public void decodesOnceAndScales() throws Exception {
+        final File file = File.createTempFile("icon", ".png");
+        file.deleteOnExit();
+        final BufferedImage picture = new BufferedImage(20, 10, BufferedImage.TYPE_3BYTE_BGR);
+        picture.setRGB(3, 4, 0x123456);
+        ImageIO.write(picture, "png", file);
+        final String key = file.toURI().toURL().toExternalForm();
+
+        final BufferedImage icon = IconCache.get(key);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, icon.getType());
+        assertEquals(0xff123456, icon.getRGB(3, 4));
+        assertSame(icon, IconCache.get(key));
+
+        final BufferedImage scaled = IconCache.get(key, 40, 20);
+        assertEquals(40, scaled.getWidth());
+        assertEquals(20, scaled.getHeight());
+        assertSame(scaled, IconCache.get(key, 40, 20));
+        assertSame(icon, IconCache.get(key, 20, 10));
+    }
+
+    @Test public void scaledVariantsAreBounded() throws Exception {
+        final File file = File.createTempFile("icon", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB), "png", file);
+        final String key = file.toURI().toURL().toExternalForm();
+
+        for (int size = 1000; size < 1010; size++) { // 4MB each, a scale per diagram
+            IconCache.get(key, size, size);
+            assertTrue(IconCache.scaledBytes() <= IconCache.MAX_SCALED_BYTES);
+        }
+        assertEquals(1009, IconCache.get(key, 1009, 1009).getWidth());
+    }
+
+    @Test public void missingIcons() {
+        assertNull(IconCache.get(null));
+        assertNull(IconCache.get("file:/does/not/exist.png"));
+        assertNull(IconCache.get("file:/does/not/exist.png", 10, 10));
+    }
+}